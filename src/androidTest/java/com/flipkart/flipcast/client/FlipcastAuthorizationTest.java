@@ -0,0 +1,147 @@
+/*
+ * Copyright 2016 Phaneesh Nagaraja <phaneesh.n@gmail.com>.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package com.flipkart.flipcast.client;
+
+import android.test.AndroidTestCase;
+
+import java.io.IOException;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+
+/**
+ * @author phaneesh
+ */
+public class FlipcastAuthorizationTest extends AndroidTestCase {
+
+    private MockWebServer server;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        server = new MockWebServer();
+        server.start();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        server.shutdown();
+        super.tearDown();
+    }
+
+    public void testHeaderFollowsTokenOfProvider() {
+        TokenProvider provider = new TokenProvider();
+        FlipcastAuthorization authorization = new FlipcastAuthorization(provider);
+
+        assertEquals("Bearer token-0", authorization.header());
+        provider.token = "rotated";
+        assertEquals("Bearer rotated", authorization.header());
+    }
+
+    public void testRefreshesExpiringToken() {
+        ExpiringTokenProvider provider = new ExpiringTokenProvider();
+        provider.expiresAt = System.currentTimeMillis() + 10000;
+        FlipcastAuthorization authorization = new FlipcastAuthorization(provider);
+
+        assertEquals("Bearer token-1", authorization.header());
+        assertEquals(1, provider.refreshes);
+    }
+
+    public void testReplaysOnceWithRefreshedTokenOn401() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(401));
+        server.enqueue(new MockResponse().setBody("ok"));
+        ExpiringTokenProvider provider = new ExpiringTokenProvider();
+
+        Response response = execute(client(new FlipcastAuthorization(provider)));
+
+        assertEquals(200, response.code());
+        response.body().close();
+        assertEquals(1, provider.refreshes);
+        assertEquals("Bearer token-0", server.takeRequest().getHeader(FlipcastAuthorization.HEADER_AUTHORIZATION));
+        assertEquals("Bearer token-1", server.takeRequest().getHeader(FlipcastAuthorization.HEADER_AUTHORIZATION));
+    }
+
+    public void testGivesUpWhenRefreshedTokenIsRejected() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(401));
+        server.enqueue(new MockResponse().setResponseCode(401));
+        server.enqueue(new MockResponse().setBody("ok"));
+        ExpiringTokenProvider provider = new ExpiringTokenProvider();
+
+        Response response = execute(client(new FlipcastAuthorization(provider)));
+
+        assertEquals(401, response.code());
+        response.body().close();
+        assertEquals(2, server.getRequestCount());
+    }
+
+    public void testDoesNotReplayUnchangedToken() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(401));
+        server.enqueue(new MockResponse().setBody("ok"));
+
+        Response response = execute(client(new FlipcastAuthorization(new TokenProvider())));
+
+        assertEquals(401, response.code());
+        response.body().close();
+        assertEquals(1, server.getRequestCount());
+    }
+
+    private static OkHttpClient client(FlipcastAuthorization authorization) {
+        return new OkHttpClient.Builder().addInterceptor(authorization).authenticator(authorization).build();
+    }
+
+    private Response execute(OkHttpClient client) throws IOException {
+        return client.newCall(new Request.Builder().url(server.url("/inapp/messages/config/device")).build()).execute();
+    }
+
+    private static class TokenProvider implements FlipcastAuthenticationProvider {
+
+        volatile String token = "token-0";
+
+        @Override
+        public String token() {
+            return token;
+        }
+
+        @Override
+        public String prefix() {
+            return "Bearer";
+        }
+    }
+
+    private static class ExpiringTokenProvider extends TokenProvider implements FlipcastExpiringAuthenticationProvider {
+
+        volatile long expiresAt;
+
+        volatile int refreshes;
+
+        @Override
+        public long expiresAt() {
+            return expiresAt;
+        }
+
+        @Override
+        public void refresh() {
+            refreshes++;
+            token = "token-" + refreshes;
+            expiresAt = 0;
+        }
+    }
+}
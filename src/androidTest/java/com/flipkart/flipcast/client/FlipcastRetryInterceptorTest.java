@@ -0,0 +1,230 @@
+/*
+ * Copyright 2016 Phaneesh Nagaraja <phaneesh.n@gmail.com>.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package com.flipkart.flipcast.client;
+
+import android.test.AndroidTestCase;
+
+import com.flipkart.flipcast.config.FlipcastConfig;
+
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+import okhttp3.Call;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+
+/**
+ * @author phaneesh
+ */
+public class FlipcastRetryInterceptorTest extends AndroidTestCase {
+
+    private MockWebServer server;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        server = new MockWebServer();
+        server.start();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        server.shutdown();
+        super.tearDown();
+    }
+
+    public void testRetriesRetryableStatus() throws IOException {
+        server.enqueue(new MockResponse().setResponseCode(503));
+        server.enqueue(new MockResponse().setResponseCode(500));
+        server.enqueue(new MockResponse().setBody("ok"));
+
+        Response response = execute(client(retries(2, 10, 50)), get());
+
+        assertEquals(200, response.code());
+        assertEquals("ok", response.body().string());
+        assertEquals(3, server.getRequestCount());
+    }
+
+    public void testGivesUpAfterMaxRetries() throws IOException {
+        for (int i = 0; i < 3; i++) {
+            server.enqueue(new MockResponse().setResponseCode(503));
+        }
+
+        Response response = execute(client(retries(2, 10, 50)), get());
+
+        assertEquals(503, response.code());
+        response.body().close();
+        assertEquals(3, server.getRequestCount());
+    }
+
+    public void testDoesNotRetryNonIdempotentRequest() throws IOException {
+        server.enqueue(new MockResponse().setResponseCode(503));
+        server.enqueue(new MockResponse().setBody("ok"));
+
+        Request post = new Request.Builder().url(server.url("/devices/register")).post(RequestBody.create(MediaType.parse("application/json"),
+                "{}")).build();
+        Response response = execute(client(retries(2, 10, 50)), post);
+
+        assertEquals(503, response.code());
+        response.body().close();
+        assertEquals(1, server.getRequestCount());
+    }
+
+    public void testBackoffIsCappedAtMaxDelay() throws IOException {
+        for (int i = 0; i < 3; i++) {
+            server.enqueue(new MockResponse().setResponseCode(503));
+        }
+        server.enqueue(new MockResponse().setBody("ok"));
+
+        long start = System.currentTimeMillis();
+        Response response = execute(client(retries(3, 60000, 100)), get());
+
+        assertEquals(200, response.code());
+        response.body().close();
+        assertTrue("Backoff not capped", System.currentTimeMillis() - start < 3000);
+    }
+
+    public void testHonorsRetryAfterSeconds() throws IOException {
+        server.enqueue(new MockResponse().setResponseCode(503).setHeader("Retry-After", "1"));
+        server.enqueue(new MockResponse().setBody("ok"));
+
+        long start = System.currentTimeMillis();
+        Response response = execute(client(retries(1, 10, 5000)), get());
+
+        assertEquals(200, response.code());
+        response.body().close();
+        assertTrue("Retry-After not honored", System.currentTimeMillis() - start >= 900);
+    }
+
+    public void testHonorsRetryAfterDate() throws IOException {
+        Date now = new Date();
+        server.enqueue(new MockResponse().setResponseCode(503).setHeader("Date", httpDate(now))
+                                         .setHeader("Retry-After", httpDate(new Date(now.getTime() + 2000))));
+        server.enqueue(new MockResponse().setBody("ok"));
+
+        long start = System.currentTimeMillis();
+        Response response = execute(client(retries(1, 10, 5000)), get());
+
+        assertEquals(200, response.code());
+        response.body().close();
+        //The date has a resolution of a second
+        assertTrue("Retry-After date not honored", System.currentTimeMillis() - start >= 900);
+    }
+
+    public void testCancelEndsBackoff() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(503).setHeader("Retry-After", "30"));
+        server.enqueue(new MockResponse().setBody("ok"));
+
+        final Call call = new FlipcastCallFactory(client(retries(1, 10, 30000))).newCall(get());
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(200);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                call.cancel();
+            }
+        }).start();
+
+        long start = System.currentTimeMillis();
+        try {
+            call.execute();
+            fail("Cancelled call completed");
+        } catch (IOException e) {
+            assertTrue("Backoff did not end on cancel", System.currentTimeMillis() - start < 5000);
+        }
+        assertEquals(1, server.getRequestCount());
+    }
+
+    public void testCircuitOpensAndHalfOpens() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(500));
+        server.enqueue(new MockResponse().setResponseCode(500));
+        server.enqueue(new MockResponse().setBody("ok"));
+        server.enqueue(new MockResponse().setBody("ok"));
+        OkHttpClient client = client(FlipcastConfig.builder().circuitBreakerThreshold(2).circuitBreakerOpenDuration(500).build());
+
+        execute(client, get()).body().close();
+        execute(client, get()).body().close();
+        try {
+            execute(client, get());
+            fail("Request went through an open circuit");
+        } catch (IOException e) {
+            assertEquals(2, server.getRequestCount());
+        }
+
+        Thread.sleep(600);
+        //Half open: a single trial request closes the circuit on success
+        Response trial = execute(client, get());
+        assertEquals(200, trial.code());
+        trial.body().close();
+        Response closed = execute(client, get());
+        assertEquals(200, closed.code());
+        closed.body().close();
+        assertEquals(4, server.getRequestCount());
+    }
+
+    public void testFailedTrialReopensCircuit() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            server.enqueue(new MockResponse().setResponseCode(500));
+        }
+        OkHttpClient client = client(FlipcastConfig.builder().circuitBreakerThreshold(2).circuitBreakerOpenDuration(500).build());
+
+        execute(client, get()).body().close();
+        execute(client, get()).body().close();
+        Thread.sleep(600);
+        execute(client, get()).body().close();
+        try {
+            execute(client, get());
+            fail("Request went through a reopened circuit");
+        } catch (IOException e) {
+            assertEquals(3, server.getRequestCount());
+        }
+    }
+
+    private static FlipcastConfig retries(int maxRetries, long baseDelay, long maxDelay) {
+        return FlipcastConfig.builder().maxRetries(maxRetries).retryBaseDelay(baseDelay).retryMaxDelay(maxDelay).build();
+    }
+
+    private static OkHttpClient client(FlipcastConfig config) {
+        return new OkHttpClient.Builder().addInterceptor(new FlipcastRetryInterceptor(config)).build();
+    }
+
+    private static Response execute(OkHttpClient client, Request request) throws IOException {
+        return client.newCall(request).execute();
+    }
+
+    private Request get() {
+        return new Request.Builder().url(server.url("/inapp/messages/config/device")).build();
+    }
+
+    private static String httpDate(Date date) {
+        SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss 'GMT'", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("GMT"));
+        return format.format(date);
+    }
+}
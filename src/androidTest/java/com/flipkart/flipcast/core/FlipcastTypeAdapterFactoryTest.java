@@ -0,0 +1,103 @@
+/*
+ * Copyright 2016 Phaneesh Nagaraja <phaneesh.n@gmail.com>.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package com.flipkart.flipcast.core;
+
+import android.test.AndroidTestCase;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Round trips of the streaming type adapters, checked against the reflective (de)serialization they replace
+ *
+ * @author phaneesh
+ */
+public class FlipcastTypeAdapterFactoryTest extends AndroidTestCase {
+
+    private final Gson streaming = new GsonBuilder().registerTypeAdapterFactory(new FlipcastTypeAdapterFactory()).create();
+
+    private final Gson reflective = new Gson();
+
+    public void testInAppMessage() {
+        assertRoundTrip(message("message-1", Arrays.asList("offer", "sale")), InAppMessage.class);
+    }
+
+    public void testInAppMessageWithoutOptionalFields() {
+        assertRoundTrip(InAppMessage.builder().id("message-1").created(1000L).build(), InAppMessage.class);
+    }
+
+    public void testMessagesResponse() {
+        MessagesResponse response = MessagesResponse.builder().count(2).message(message("message-1", Collections.singletonList("offer")))
+                                                    .message(message("message-2", null)).build();
+        assertRoundTrip(response, MessagesResponse.class);
+    }
+
+    public void testEmptyMessagesResponse() {
+        assertRoundTrip(new MessagesResponse(0, Collections.<InAppMessage>emptyList()), MessagesResponse.class);
+    }
+
+    public void testMessageCountResponse() {
+        assertRoundTrip(MessageCountResponse.builder().count(42).build(), MessageCountResponse.class);
+    }
+
+    public void testMessageAckResponse() {
+        assertRoundTrip(MessageAckResponse.builder().messageId("message-1").build(), MessageAckResponse.class);
+    }
+
+    public void testDeviceData() {
+        DeviceData data = DeviceData.builder().configName("config").deviceId("device").cloudMessagingId("gcm").appName("app").appVersion("1.0")
+                                    .build();
+        assertRoundTrip(data, DeviceData.class);
+    }
+
+    public void testSkipsUnknownFieldsAndNulls() {
+        String json = "{\"id\":\"message-1\",\"unknown\":{\"nested\":[1,2]},\"message\":null,\"tags\":null,\"ttl\":null,\"created\":1000}";
+
+        InAppMessage message = streaming.fromJson(json, InAppMessage.class);
+
+        assertEquals(reflective.fromJson(json, InAppMessage.class), message);
+        assertEquals("message-1", message.getId());
+        assertNull(message.getMessage());
+        assertEquals(1000L, message.getCreated());
+    }
+
+    public void testNullValue() {
+        assertNull(streaming.fromJson("null", InAppMessage.class));
+        assertEquals("null", streaming.toJson(null, InAppMessage.class));
+    }
+
+    /**
+     * The value survives a round trip through the streaming adapter, and its JSON is interchangeable with reflective JSON
+     */
+    private <T> void assertRoundTrip(T value, Class<T> type) {
+        String json = streaming.toJson(value, type);
+        assertEquals(value, streaming.fromJson(json, type));
+        assertEquals(value, reflective.fromJson(json, type));
+        assertEquals(value, streaming.fromJson(reflective.toJson(value, type), type));
+    }
+
+    private static InAppMessage message(String id, List<String> tags) {
+        return InAppMessage.builder().id(id).configName("config").priority("high").deviceId("device").messageType("promo")
+                           .message("{\"title\":\"Sale \\u00e9 \\\"today\\\"\"}").tags(tags).ttl(60000).status(InAppMessage.STATUS_NEW)
+                           .created(1000L).build();
+    }
+}
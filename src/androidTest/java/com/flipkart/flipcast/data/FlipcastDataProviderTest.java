@@ -0,0 +1,106 @@
+/*
+ * Copyright 2016 Phaneesh Nagaraja <phaneesh.n@gmail.com>.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package com.flipkart.flipcast.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.provider.BaseColumns;
+import android.test.AndroidTestCase;
+
+import com.flipkart.flipcast.core.InAppMessage;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * @author phaneesh
+ */
+public class FlipcastDataProviderTest extends AndroidTestCase {
+
+    private static final String AUTHORITY = "com.flipkart.flipcast.test";
+
+    private FlipcastDataProvider provider;
+
+    private FlipcastUriGenerator uriGenerator;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        provider = new FlipcastDataProvider(getContext(), AUTHORITY);
+        uriGenerator = new FlipcastUriGenerator(AUTHORITY);
+        provider.delete(uriGenerator.generateUriForAllInAppMessages(), null, null);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        provider.delete(uriGenerator.generateUriForAllInAppMessages(), null, null);
+        super.tearDown();
+    }
+
+    public void testKeysetPagingKeepsMessagesCreatedAtTheSameTime() {
+        int total = 10;
+        ContentValues[] values = new ContentValues[total];
+        for (int i = 0; i < total; i++) {
+            //Two distinct creation times, each shared by five messages
+            values[i] = TableInAppMessages.getContentValues(message("message-" + i, i < 5 ? 1000L : 2000L));
+        }
+        assertEquals(total, provider.bulkInsert(uriGenerator.generateUriForAllInAppMessages(), values));
+
+        Set<String> seen = new HashSet<>();
+        Cursor page = provider.query(uriGenerator.generateUriForInAppMessages(3, 0), null, null, null, null);
+        int pages = 0;
+        while (page.getCount() > 0) {
+            long created = 0;
+            long rowId = 0;
+            while (page.moveToNext()) {
+                assertTrue("Message repeated across pages", seen.add(page.getString(page.getColumnIndex(TableInAppMessages.COLUMN_ID))));
+                created = page.getLong(page.getColumnIndex(TableInAppMessages.COLUMN_CREATED));
+                rowId = page.getLong(page.getColumnIndex(BaseColumns._ID));
+            }
+            page.close();
+            assertTrue("Paging does not terminate", ++pages <= total);
+            page = provider.query(uriGenerator.generateUriForInAppMessagesBefore(created, rowId, 3), null, null, null, null);
+        }
+        page.close();
+        assertEquals(total, seen.size());
+    }
+
+    public void testWritesLeaveCallerValuesUntouched() {
+        CacheUtils cacheUtils = new CacheUtils(getContext());
+        cacheUtils.setInAppCompressionThreshold(16);
+        try {
+            ContentValues values = TableInAppMessages.getContentValues(message("message-1", 1000L));
+            ContentValues inserted = new ContentValues(values);
+            provider.insert(uriGenerator.generateUriForAllInAppMessages(), values);
+            assertEquals(inserted, values);
+
+            ContentValues update = new ContentValues();
+            update.put(TableInAppMessages.COLUMN_MESSAGE, "a longer body of message-1 which gets compressed");
+            ContentValues updated = new ContentValues(update);
+            provider.update(uriGenerator.generateUriForAllInAppMessages(), update, TableInAppMessages.COLUMN_ID + "=?", new String[]{"message-1"});
+            assertEquals(updated, update);
+        } finally {
+            cacheUtils.setInAppCompressionThreshold(-1);
+        }
+    }
+
+    private static InAppMessage message(String id, long created) {
+        return InAppMessage.builder().id(id).configName("config").priority("high").deviceId("device").messageType("promo").message("body of " + id)
+                .status(InAppMessage.STATUS_NEW).created(created).build();
+    }
+}
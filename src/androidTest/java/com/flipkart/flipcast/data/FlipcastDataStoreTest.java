@@ -0,0 +1,118 @@
+/*
+ * Copyright 2016 Phaneesh Nagaraja <phaneesh.n@gmail.com>.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package com.flipkart.flipcast.data;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.test.AndroidTestCase;
+import android.test.RenamingDelegatingContext;
+
+import com.flipkart.flipcast.core.InAppMessage;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @author phaneesh
+ */
+public class FlipcastDataStoreTest extends AndroidTestCase {
+
+    private static final int MESSAGES = 50;
+
+    private Context context;
+
+    private FlipcastDataStore store;
+
+    private CacheUtils cacheUtils;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        context = new RenamingDelegatingContext(getContext(), "test.");
+        store = new FlipcastDataStore(context);
+        cacheUtils = new CacheUtils(context);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        cacheUtils.setInAppCompressionThreshold(-1);
+        store.close();
+        context.deleteDatabase("flipcast.db");
+        super.tearDown();
+    }
+
+    public void testCompressionShrinksDatabase() {
+        cacheUtils.setInAppCompressionThreshold(-1);
+        long plainPages = pagesAfterWriting();
+
+        cacheUtils.setInAppCompressionThreshold(256);
+        long compressedPages = pagesAfterWriting();
+
+        assertTrue("Compressed: " + compressedPages + " pages, plain: " + plainPages + " pages", compressedPages * 2 < plainPages);
+    }
+
+    public void testCompressedMessagesAreSearchableAndReadable() {
+        cacheUtils.setInAppCompressionThreshold(256);
+        store.mergeInAppMessages(messages());
+
+        Cursor cursor = TableInAppMessagesSearch.search(store, "campaign", null, null, null, null);
+        try {
+            assertEquals(MESSAGES, cursor.getCount());
+            assertTrue(cursor.moveToFirst());
+            assertEquals(body(0).length(), TableInAppMessages.readSingleInAppMessageFromCursor(cursor).getMessage().length());
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Write the same messages into an empty, vacuumed database and return its page count
+     */
+    private long pagesAfterWriting() {
+        store.delete(TableInAppMessages.NAME, null, null);
+        store.getWritableDatabase().execSQL("VACUUM");
+        assertEquals(MESSAGES, store.mergeInAppMessages(messages()));
+        Cursor cursor = store.rawQuery("PRAGMA page_count", null);
+        try {
+            assertTrue(cursor.moveToFirst());
+            return cursor.getLong(0);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static List<InAppMessage> messages() {
+        List<InAppMessage> messages = new ArrayList<>(MESSAGES);
+        for (int i = 0; i < MESSAGES; i++) {
+            messages.add(InAppMessage.builder().id("message-" + i).configName("config").priority("high").deviceId("device").messageType("promo")
+                    .message(body(i)).status(InAppMessage.STATUS_NEW).created(1000L + i).build());
+        }
+        return messages;
+    }
+
+    /**
+     * A rich campaign payload of about 20KB
+     */
+    private static String body(int index) {
+        StringBuilder body = new StringBuilder("<html><body><h1>campaign ").append(index).append("</h1>");
+        for (int i = 0; i < 400; i++) {
+            body.append("<div class=\"offer\">offer ").append(i).append(" of campaign ").append(index).append("</div> ");
+        }
+        return body.append("</body></html>").toString();
+    }
+}
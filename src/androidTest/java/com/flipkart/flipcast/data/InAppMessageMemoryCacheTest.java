@@ -0,0 +1,117 @@
+/*
+ * Copyright 2016 Phaneesh Nagaraja <phaneesh.n@gmail.com>.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package com.flipkart.flipcast.data;
+
+import android.test.AndroidTestCase;
+
+import com.flipkart.flipcast.core.InAppMessage;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * @author phaneesh
+ */
+public class InAppMessageMemoryCacheTest extends AndroidTestCase {
+
+    private InAppMessageMemoryCache cache;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        cache = new InAppMessageMemoryCache(1024 * 1024);
+    }
+
+    public void testCallersGetTheirOwnCopies() {
+        InAppMessage message = message("message-1", "promo", "high");
+        cache.put(message, cache.generation());
+        message.setStatus(InAppMessage.STATUS_READ);
+
+        InAppMessage cached = cache.get("message-1", now());
+        assertEquals(InAppMessage.STATUS_NEW, cached.getStatus());
+        cached.setStatus(InAppMessage.STATUS_READ);
+        cached.getTags().add("changed");
+
+        InAppMessage again = cache.get("message-1", now());
+        assertNotSame(cached, again);
+        assertEquals(InAppMessage.STATUS_NEW, again.getStatus());
+        assertEquals(1, again.getTags().size());
+    }
+
+    public void testWriteInvalidatesOnlyAffectedEntries() {
+        long generation = cache.generation();
+        cache.put(message("message-1", "promo", "high"), generation);
+        cache.put(message("message-2", "promo", "high"), generation);
+        cache.putList("alert", "low", Arrays.asList(message("message-3", "alert", "low")), generation);
+        cache.putList("promo", "high", Arrays.asList(message("message-1", "promo", "high")), generation);
+
+        cache.invalidate(new InAppMessageMemoryCache.Invalidation().add("message-1", "promo", "high"));
+
+        assertNull(cache.get("message-1", now()));
+        assertNull(cache.getList("promo", "high", now()));
+        assertNotNull(cache.get("message-2", now()));
+        assertNotNull(cache.getList("alert", "low", now()));
+    }
+
+    public void testWriteInvalidatesListsTheMessageMayJoinOrLeave() {
+        long generation = cache.generation();
+        cache.putList("alert", "low", Arrays.asList(message("message-1", "alert", "low")), generation);
+        cache.putList(null, null, Arrays.asList(message("message-2", "alert", "low")), generation);
+        cache.putList("promo", null, Arrays.asList(message("message-2", "promo", "low")), generation);
+
+        //message-1 moves from (alert, low) to (promo, high)
+        cache.invalidate(new InAppMessageMemoryCache.Invalidation().add("message-1", "promo", "high"));
+
+        assertNull(cache.getList("alert", "low", now()));
+        assertNull(cache.getList(null, null, now()));
+        assertNull(cache.getList("promo", null, now()));
+    }
+
+    public void testReadRacingAWriteIsNotCached() {
+        long generation = cache.generation();
+        cache.invalidate(new InAppMessageMemoryCache.Invalidation().add("message-9", "promo", "high"));
+
+        cache.put(message("message-1", "promo", "high"), generation);
+
+        assertNull(cache.get("message-1", now()));
+    }
+
+    public void testListsAreUnmodifiableCopies() {
+        cache.putList("promo", "high", Arrays.asList(message("message-1", "promo", "high")), cache.generation());
+
+        List<InAppMessage> messages = cache.getList("promo", "high", now());
+        messages.get(0).setStatus(InAppMessage.STATUS_READ);
+        try {
+            messages.clear();
+            fail("Cached list is modifiable");
+        } catch (UnsupportedOperationException e) {
+            assertEquals(InAppMessage.STATUS_NEW, cache.getList("promo", "high", now()).get(0).getStatus());
+        }
+    }
+
+    private static long now() {
+        return System.currentTimeMillis();
+    }
+
+    private static InAppMessage message(String id, String messageType, String priority) {
+        return InAppMessage.builder().id(id).configName("config").priority(priority).deviceId("device").messageType(messageType)
+                           .message("body of " + id).tags(new ArrayList<>(Arrays.asList("offer"))).status(InAppMessage.STATUS_NEW)
+                           .created(now()).build();
+    }
+}
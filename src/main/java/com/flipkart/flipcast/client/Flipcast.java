@@ -17,24 +17,55 @@
 
 package com.flipkart.flipcast.client;
 
+import android.content.BroadcastReceiver;
 import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.database.ContentObserver;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
 import android.util.Log;
 
 import com.flipkart.flipcast.config.FlipcastConfig;
 import com.flipkart.flipcast.core.DeviceData;
+import com.flipkart.flipcast.core.FlipcastTypeAdapterFactory;
 import com.flipkart.flipcast.core.MessageAckResponse;
 import com.flipkart.flipcast.core.MessageCountResponse;
 import com.flipkart.flipcast.core.MessagesResponse;
 import com.flipkart.flipcast.data.CacheUtils;
+import com.flipkart.flipcast.data.FlipcastDataStore;
+import com.flipkart.flipcast.data.FlipcastUriGenerator;
+import com.flipkart.flipcast.data.InAppMessageWriter;
+import com.flipkart.flipcast.data.TableInAppMessages;
+import com.flipkart.flipcast.data.TableOutbox;
+import com.flipkart.flipcast.log.FlipcastLog;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.google.gson.stream.JsonReader;
 
-import java.util.Locale;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 
 import lombok.Builder;
+import okhttp3.Authenticator;
 import okhttp3.ConnectionPool;
 import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.ResponseBody;
 import retrofit2.Call;
 import retrofit2.Callback;
 import retrofit2.Response;
@@ -46,6 +77,12 @@ import retrofit2.converter.gson.GsonConverterFactory;
  */
 public class Flipcast {
 
+    private static final String TAG = "flipcast";
+
+    private static final int OUTBOX_BATCH_SIZE = 50;
+
+    private static final int HTTP_NOT_MODIFIED = 304;
+
     private OkHttpClient okHttpClient;
 
     private FlipcastConfig config;
@@ -58,16 +95,70 @@ public class Flipcast {
 
     private FlipcastAuthenticationProvider authenticationProvider = null;
 
-    @Builder(builderMethodName = "createDefault", builderClassName = "CreateDefaultBuilder")
+    private FlipcastAckBatcher ackBatcher;
+
+    private FlipcastConditionalCache conditionalCache;
+
+    private FlipcastCountCache countCache;
+
+    private final FlipcastSingleFlight singleFlight = new FlipcastSingleFlight();
+
+    private Context context;
+
+    private String authority;
+
+    private final Map<String, List<FlipcastSyncCallback>> syncsInFlight = new HashMap<>();
+
+    private ExecutorService syncExecutor;
+
+    private ExecutorService localExecutor;
+
+    private ExecutorService outboxExecutor;
+
+    private Handler mainHandler;
+
+    private Gson gson;
+
+    private volatile boolean outboxEnabled;
+
+    private BroadcastReceiver connectivityReceiver;
+
+    /**
+     * Client without a local message cache: syncing, local counts and the outbox are not available
+     *
+     * @param config
+     */
     public Flipcast(final FlipcastConfig config) {
+        this(config, null, null);
+    }
+
+    @Builder(builderMethodName = "createDefault", builderClassName = "CreateDefaultBuilder")
+    public Flipcast(final FlipcastConfig config, Context context, String authority) {
         this.config = config;
-        this.okHttpClient = new OkHttpClient.Builder().connectionPool(new ConnectionPool(1, 3000, TimeUnit.SECONDS))
-                                                      .connectTimeout(config.getConnectionTimeout(), TimeUnit.MILLISECONDS)
-                                                      .readTimeout(config.getRequestTimeout(), TimeUnit.MILLISECONDS)
-                                                      .writeTimeout(config.getRequestTimeout(), TimeUnit.MILLISECONDS)
-                                                      .build();
+        this.authority = authority;
+        setupContext(context);
+        OkHttpClient.Builder builder = new OkHttpClient.Builder().connectionPool(new ConnectionPool(config.getMaxIdleConnections(), config
+                .getKeepAliveDuration(), TimeUnit.MILLISECONDS))
+                                                                 .connectTimeout(config.getConnectionTimeout(), TimeUnit.MILLISECONDS)
+                                                                 .readTimeout(config.getRequestTimeout(), TimeUnit.MILLISECONDS)
+                                                                 .writeTimeout(config.getRequestTimeout(), TimeUnit.MILLISECONDS);
+        if (config.isHttp2()) {
+            builder.protocols(Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1));
+        }
+        this.okHttpClient = builder.build();
         setupBaseUrl();
-        setupClient(new GsonBuilder().create());
+        setupRetries();
+        setupConditionalCache();
+        setupClient(defaultGson());
+        setupAckBatcher();
+        setupCountCache();
+        preWarm();
+    }
+
+    private void setupContext(Context context) {
+        if (context != null) {
+            this.context = context.getApplicationContext();
+        }
     }
 
     private void setupBaseUrl() {
@@ -80,108 +171,206 @@ public class Flipcast {
         baseUrl = scheme + "://" + config.getHost() + ":" + config.getPort() + "/" + config.getEndpoint();
     }
 
+    /**
+     * Gson with streaming type adapters for all the flipcast models
+     *
+     * @return Gson
+     */
+    public static Gson defaultGson() {
+        return new GsonBuilder().registerTypeAdapterFactory(new FlipcastTypeAdapterFactory()).create();
+    }
+
+    FlipcastConfig getConfig() {
+        return config;
+    }
+
+    /**
+     * @return true if messages can be synced, i.e. the {@link Context} was set while building the client
+     */
+    boolean canSync() {
+        return context != null;
+    }
+
+    private void setupRetries() {
+        if (config.getMaxRetries() > 0 || config.getCircuitBreakerThreshold() > 0) {
+            okHttpClient = okHttpClient.newBuilder().addInterceptor(new FlipcastRetryInterceptor(config)).build();
+        }
+    }
+
+    private void setupAuthorization() {
+        if (authenticationProvider != null) {
+            FlipcastAuthorization authorization = new FlipcastAuthorization(authenticationProvider);
+            okHttpClient = okHttpClient.newBuilder().addInterceptor(authorization).authenticator(authorization).build();
+        }
+    }
+
+    private void setupConditionalCache() {
+        if (config.isConditionalFetch()) {
+            conditionalCache = new FlipcastConditionalCache();
+            okHttpClient = okHttpClient.newBuilder().addInterceptor(conditionalCache).build();
+        }
+    }
+
     private void setupClient(Gson gson) {
-        retrofit = new Retrofit.Builder().client(okHttpClient).baseUrl(baseUrl).addConverterFactory(GsonConverterFactory.create(gson)).build();
+        this.gson = gson;
+        //Retries wait between attempts; the call factory lets a cancelled call end that wait
+        okhttp3.Call.Factory callFactory = config.getMaxRetries() > 0 ? new FlipcastCallFactory(okHttpClient) : okHttpClient;
+        retrofit = new Retrofit.Builder().callFactory(callFactory).baseUrl(baseUrl).addConverterFactory(GsonConverterFactory.create(gson)).build();
         flipcastHttpClient = retrofit.create(FlipcastHttpClient.class);
     }
 
-    @Builder(builderMethodName = "custom", builderClassName = "CustomBuilder")
+    private void setupAckBatcher() {
+        if (config.getAckBatchSize() > 1) {
+            ackBatcher = new FlipcastAckBatcher(this, config.getAckBatchSize(), config.getAckBatchWindow());
+        }
+    }
+
+    /**
+     * Custom client without a local message cache: syncing, local counts and the outbox are not available
+     *
+     * @param okHttpClient
+     * @param config
+     * @param gson
+     * @param authenticationProvider
+     */
     public Flipcast(OkHttpClient okHttpClient, FlipcastConfig config, Gson gson, FlipcastAuthenticationProvider authenticationProvider) {
+        this(okHttpClient, config, gson, authenticationProvider, null, null);
+    }
+
+    @Builder(builderMethodName = "custom", builderClassName = "CustomBuilder")
+    public Flipcast(OkHttpClient okHttpClient, FlipcastConfig config, Gson gson, FlipcastAuthenticationProvider authenticationProvider, Context
+            context, String authority) {
         this.config = config;
+        this.authority = authority;
+        setupContext(context);
         this.okHttpClient = okHttpClient;
         this.authenticationProvider = authenticationProvider;
         setupBaseUrl();
-        setupClient(gson);
+        setupRetries();
+        setupConditionalCache();
+        setupAuthorization();
+        setupClient(gson == null ? defaultGson() : gson);
+        setupAckBatcher();
+        setupCountCache();
+        preWarm();
+    }
+
+    private void setupCountCache() {
+        if (config.getCountCacheTtl() > 0) {
+            countCache = new FlipcastCountCache(config.getCountCacheTtl());
+        }
     }
 
     /**
-     * Register the device with flipcast service
-     *
-     * @param request
-     * @param callback
+     * Open (and TLS handshake) a pooled connection to the service in the background, so that the first request does not
+     * pay for connection setup. The warm-up request shares only the connection pool: it skips the authorization, retry,
+     * circuit breaker and conditional cache interceptors, so its response never counts towards any of them.
      */
-    public void register(DeviceData request, final Callback<DeviceData> callback) {
-        Call<DeviceData> call = authenticationProvider == null ? flipcastHttpClient.register(request.getConfigName(), request.getDeviceId(), request) :
-                flipcastHttpClient
-                .register(String.format("%s %s", authenticationProvider.prefix(), authenticationProvider.token()), request.getConfigName(), request
-                        .getDeviceId(), request);
-        call.enqueue(new Callback<DeviceData>() {
+    private void preWarm() {
+        if (!config.isPreWarm()) {
+            return;
+        }
+        OkHttpClient.Builder bare = okHttpClient.newBuilder().authenticator(Authenticator.NONE);
+        bare.interceptors().clear();
+        bare.networkInterceptors().clear();
+        bare.build().newCall(new Request.Builder().url(baseUrl).head().build()).enqueue(new okhttp3.Callback() {
             @Override
-            public void onResponse(Call<DeviceData> call, Response<DeviceData> response) {
-                Log.i("flipcast", "Device registered successfully: " + response.body());
-                if (callback != null) {
-                    callback.onResponse(call, response);
-                }
+            public void onFailure(okhttp3.Call call, IOException e) {
+                FlipcastLog.w(TAG, "Could not pre-warm connection");
             }
 
             @Override
-            public void onFailure(Call<DeviceData> call, Throwable t) {
-                Log.e("flipcast", "Error registering device: " + t.getMessage());
-                if (callback != null) {
-                    callback.onFailure(call, t);
-                }
+            public void onResponse(okhttp3.Call call, okhttp3.Response response) throws IOException {
+                response.body().close();
             }
         });
     }
 
     /**
-     * Unregister the device from flipcast service
+     * Register the device with flipcast service. When the {@link Context} is set, registering the same data again is
+     * answered locally until the registration is older than the configured max age.
      *
-     * @param config
-     * @param id
+     * @param request
      * @param callback
      */
-    public void unregister(String config, String id, final Callback<Response> callback) {
-        Call<Response> call = authenticationProvider == null ? flipcastHttpClient.unregister(config, id) : flipcastHttpClient.unregister(String.format("%s "
-                + "%s", authenticationProvider
-                .prefix(), authenticationProvider.token()), config, id);
-        call.enqueue(new Callback<Response>() {
-            @Override
-            public void onResponse(Call<Response> call, Response<Response> response) {
-                Log.i("flipcast", "Device unregistered successfully: " + response.body());
-                if (callback != null) {
-                    callback.onResponse(call, response);
-                }
+    public void register(final DeviceData request, Callback<DeviceData> callback) {
+        String fingerprint = fingerprint(request);
+        if (isRegistered(request, fingerprint)) {
+            FlipcastLog.d(TAG, "Device already registered with the same data. Skipping registration");
+            if (callback != null) {
+                Response<DeviceData> response = Response.success(request);
+                callback.onResponse(new FlipcastCompletedCall<DeviceData>(response) {
+                    @Override
+                    protected Call<DeviceData> create() {
+                        return registerCall(request);
+                    }
+                }, response);
             }
+            return;
+        }
+        dispatch(Operation.REGISTER, request.getConfigName(), request.getDeviceId(), null, request, fingerprint, registerCall(request), callback);
+    }
 
-            @Override
-            public void onFailure(Call<Response> call, Throwable t) {
-                Log.e("flipcast", "Error unregistering device: " + t.getMessage());
-                if (callback != null) {
-                    callback.onFailure(call, t);
-                }
+    /**
+     * A registration can be skipped if the same data was registered successfully for the device and the registration is
+     * not older than the configured max age
+     */
+    private boolean isRegistered(DeviceData request, String fingerprint) {
+        if (context == null || fingerprint == null) {
+            return false;
+        }
+        CacheUtils cacheUtils = new CacheUtils(context);
+        if (!fingerprint.equals(cacheUtils.getRegistrationFingerprint(request.getConfigName(), request.getDeviceId()))) {
+            return false;
+        }
+        return config.getRegistrationMaxAge() <= 0 || System.currentTimeMillis() - cacheUtils.getRegistrationTime(request.getConfigName(), request
+                .getDeviceId()) < config.getRegistrationMaxAge();
+    }
+
+    /**
+     * SHA-1 of all the registered fields of the device data
+     *
+     * @return hex encoded fingerprint or null if it could not be computed
+     */
+    private static String fingerprint(DeviceData request) {
+        StringBuilder data = new StringBuilder();
+        for (String field : new String[]{request.getConfigName(), request.getDeviceId(), request.getCloudMessagingId(), request.getOsName(), request
+                .getOsVersion(), request.getBrand(), request.getModel(), request.getAppName(), request.getAppVersion()}) {
+            data.append(field).append('\u0000');
+        }
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(data.toString().getBytes("UTF-8"));
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
             }
-        });
+            return hex.toString();
+        } catch (NoSuchAlgorithmException | UnsupportedEncodingException e) {
+            FlipcastLog.w(TAG, "Could not compute registration fingerprint");
+            return null;
+        }
     }
 
     /**
-     * Count the messages for a device from flipcast service
+     * Unregister the device from flipcast service
      *
      * @param config
      * @param id
      * @param callback
      */
-    public void count(String config, String id, final Callback<MessageCountResponse> callback) {
-        Call<MessageCountResponse> call = authenticationProvider == null ? flipcastHttpClient.count(config, id) : flipcastHttpClient.countAuth(String.format
-                ("%s %s", authenticationProvider
-                .prefix(), authenticationProvider.token()), config, id);
-        call.enqueue(new Callback<MessageCountResponse>() {
-            @Override
-            public void onResponse(Call<MessageCountResponse> call, Response<MessageCountResponse> response) {
-                Log.i("flipcast", "Message count fetched successfully: " + response.body());
-                if (callback != null) {
-                    callback.onResponse(call, response);
-                }
-            }
+    public void unregister(String config, String id, Callback<Response> callback) {
+        dispatch(Operation.UNREGISTER, config, id, null, null, null, unregisterCall(config, id), callback);
+    }
 
-            @Override
-            public void onFailure(Call<MessageCountResponse> call, Throwable t) {
-                Log.e("flipcast", "Error fetching message count: " + t.getMessage());
-                if (callback != null) {
-                    callback.onFailure(call, t);
-                }
-            }
-        });
+    /**
+     * Count the messages for a device from flipcast service
+     *
+     * @param config
+     * @param id
+     * @param callback
+     */
+    public void count(String config, String id, Callback<MessageCountResponse> callback) {
+        countFromServerOrCache(config, id, null, null, callback);
     }
 
     /**
@@ -192,27 +381,8 @@ public class Flipcast {
      * @param messageType
      * @param callback
      */
-    public void count(String config, String id, String messageType, final Callback<MessageCountResponse> callback) {
-        Call<MessageCountResponse> call = authenticationProvider == null ? flipcastHttpClient.count(config, id, messageType) : flipcastHttpClient.countAuth
-                (String
-                .format("%s %s", authenticationProvider.prefix(), authenticationProvider.token()), config, id, messageType);
-        call.enqueue(new Callback<MessageCountResponse>() {
-            @Override
-            public void onResponse(Call<MessageCountResponse> call, Response<MessageCountResponse> response) {
-                Log.i("flipcast", "Message count fetched successfully: " + response.body());
-                if (callback != null) {
-                    callback.onResponse(call, response);
-                }
-            }
-
-            @Override
-            public void onFailure(Call<MessageCountResponse> call, Throwable t) {
-                Log.e("flipcast", "Error fetching message count: " + t.getMessage());
-                if (callback != null) {
-                    callback.onFailure(call, t);
-                }
-            }
-        });
+    public void count(String config, String id, String messageType, Callback<MessageCountResponse> callback) {
+        countFromServerOrCache(config, id, messageType, null, callback);
     }
 
     /**
@@ -223,27 +393,30 @@ public class Flipcast {
      * @param messageType
      * @param callback
      */
-    public void count(String config, String id, String messageType, String priority, final Callback<MessageCountResponse> callback) {
-        Call<MessageCountResponse> call = authenticationProvider == null ? flipcastHttpClient.count(config, id, messageType, priority) : flipcastHttpClient
-                .countAuth(String
-                .format("%s %s", authenticationProvider.prefix(), authenticationProvider.token()), config, id, messageType, priority);
-        call.enqueue(new Callback<MessageCountResponse>() {
-            @Override
-            public void onResponse(Call<MessageCountResponse> call, Response<MessageCountResponse> response) {
-                Log.i("flipcast", "Message count fetched successfully: " + response.body());
-                if (callback != null) {
-                    callback.onResponse(call, response);
-                }
-            }
+    public void count(String config, String id, String messageType, String priority, Callback<MessageCountResponse> callback) {
+        countFromServerOrCache(config, id, messageType, priority, callback);
+    }
 
-            @Override
-            public void onFailure(Call<MessageCountResponse> call, Throwable t) {
-                Log.e("flipcast", "Error fetching message count: " + t.getMessage());
-                if (callback != null) {
-                    callback.onFailure(call, t);
-                }
-            }
-        });
+    /**
+     * The call is built only if the count cannot be served from the caches
+     */
+    private void countFromServerOrCache(String config, String id, String messageType, String priority, Callback<MessageCountResponse>
+            callback) {
+        String key = FlipcastSingleFlight.key("count", config, id, messageType, priority);
+        if (countFromCache(key, config, id, messageType, priority, callback)) {
+            return;
+        }
+        dispatch(Operation.COUNT, config, id, key, null, null, countCall(config, id, messageType, priority), callback);
+    }
+
+    private Call<MessageCountResponse> countCall(String config, String id, String messageType, String priority) {
+        if (messageType == null) {
+            return flipcastHttpClient.count(config, id);
+        }
+        if (priority == null) {
+            return flipcastHttpClient.count(config, id, messageType);
+        }
+        return flipcastHttpClient.count(config, id, messageType, priority);
     }
 
     /**
@@ -253,114 +426,538 @@ public class Flipcast {
      * @param id
      * @param callback
      */
-    public void messages(String config, String id, final Callback<MessagesResponse> callback) {
-        Call<MessagesResponse> call = authenticationProvider == null ? flipcastHttpClient.messages(config, id) : flipcastHttpClient.messagesAuth(String
-                .format("%s %s", authenticationProvider
-                .prefix(), authenticationProvider.token()), config, id);
-        call.enqueue(new Callback<MessagesResponse>() {
-            @Override
-            public void onResponse(Call<MessagesResponse> call, Response<MessagesResponse> response) {
-                Log.i("flipcast", "Messages fetched successfully: " + response.body());
+    public void messages(String config, String id, Callback<MessagesResponse> callback) {
+        dispatch(Operation.MESSAGES, config, id, FlipcastSingleFlight.key("messages", config, id, null, null), null, null, flipcastHttpClient
+                .messages(config, id), callback);
+    }
+
+    /**
+     * Get all the unread messages by message type for a device from flipcast service
+     *
+     * @param config
+     * @param id
+     * @param messageType
+     * @param callback
+     */
+    public void messages(String config, String id, String messageType, Callback<MessagesResponse> callback) {
+        dispatch(Operation.MESSAGES, config, id, FlipcastSingleFlight.key("messages", config, id, messageType, null), null, null,
+                flipcastHttpClient.messages(config, id, messageType), callback);
+    }
+
+    /**
+     * Get all the unread messages by message type and priority for a device from flipcast service
+     *
+     * @param config
+     * @param id
+     * @param messageType
+     * @param callback
+     */
+    public void messages(String config, String id, String messageType, String priority, Callback<MessagesResponse> callback) {
+        dispatch(Operation.MESSAGES, config, id, FlipcastSingleFlight.key("messages", config, id, messageType, priority), null, null,
+                flipcastHttpClient.messages(config, id, messageType, priority), callback);
+    }
+
+    /**
+     * Acknowledge a message. When ack batching is enabled in {@link FlipcastConfig} the acknowledgement is queued and
+     * sent along with other acknowledgements for the same config.
+     *
+     * @param config
+     * @param id
+     * @param callback
+     */
+    public void ack(String config, String id, Callback<MessageAckResponse> callback) {
+        if (ackBatcher != null) {
+            ackBatcher.ack(config, id, dispatcher(Operation.ACK, config, id, null, null, null, callback));
+        } else {
+            dispatch(Operation.ACK, config, id, null, null, null, ackCall(config, id), callback);
+        }
+    }
+
+    /**
+     * Single path through which all the calls are sent. Calls with a key are deduplicated while in flight.
+     */
+    private <T> void dispatch(Operation operation, String config, String id, String key, DeviceData request, String fingerprint, Call<T> call,
+                              Callback<T> callback) {
+        Callback<T> dispatcher = dispatcher(operation, config, id, key, request, fingerprint, callback);
+        if (key == null) {
+            call.enqueue(dispatcher);
+        } else {
+            singleFlight.enqueue(key, call, dispatcher);
+        }
+    }
+
+    /**
+     * The caller's callback is wrapped only when the response has to be post processed or debug logging is on.
+     * Otherwise failures are left to the caller's callback, or logged by a shared callback if there is none.
+     */
+    @SuppressWarnings("unchecked")
+    private <T> Callback<T> dispatcher(Operation operation, String config, String id, String key, DeviceData request, String fingerprint,
+                                       Callback<T> callback) {
+        if (FlipcastLog.isLoggable(Log.DEBUG) || hasSideEffects(operation)) {
+            return new Dispatcher<>(operation, config, id, key, request, fingerprint, callback);
+        }
+        return callback == null ? (Callback<T>) operation.unattended : callback;
+    }
+
+    private boolean hasSideEffects(Operation operation) {
+        switch (operation) {
+            case REGISTER:
+            case UNREGISTER:
+                return context != null;
+            case COUNT:
+            case MESSAGES:
+                return conditionalCache != null || countCache != null;
+            case ACK:
+                return countCache != null || outboxEnabled;
+            default:
+                return true;
+        }
+    }
+
+    /**
+     * Send all the queued acknowledgements right away instead of waiting for the batch window
+     */
+    public void flushAcks() {
+        if (ackBatcher != null) {
+            ackBatcher.flush();
+        }
+    }
+
+    Call<DeviceData> registerCall(DeviceData request) {
+        return flipcastHttpClient.register(request.getConfigName(), request.getDeviceId(), request);
+    }
+
+    Call<Response> unregisterCall(String config, String id) {
+        return flipcastHttpClient.unregister(config, id);
+    }
+
+    Call<MessageAckResponse> ackCall(String config, String id) {
+        return flipcastHttpClient.ack(config, id);
+    }
+
+    Call<List<MessageAckResponse>> ackBatchCall(String config, List<String> ids) {
+        return flipcastHttpClient.ackBatch(config, ids);
+    }
+
+
+    /**
+     * Fetch only the messages created after the last synced message for a device and merge them into the local
+     * {@link TableInAppMessages} cache. Expired messages are purged from the cache along the way. Requires the
+     * {@link Context} to be set while building the client.
+     *
+     * @param config
+     * @param id
+     * @param callback
+     */
+    public void sync(final String config, final String id, FlipcastSyncCallback callback) {
+        if (context == null) {
+            throw new IllegalStateException("Context is required for syncing messages");
+        }
+        final String key = config + '/' + id;
+        synchronized (syncsInFlight) {
+            List<FlipcastSyncCallback> waiting = syncsInFlight.get(key);
+            if (waiting != null) {
+                //A sync for the device is already queued or running; just wait for its result
                 if (callback != null) {
-                    callback.onResponse(call, response);
+                    waiting.add(callback);
                 }
+                return;
             }
-
+            waiting = new ArrayList<>(2);
+            if (callback != null) {
+                waiting.add(callback);
+            }
+            syncsInFlight.put(key, waiting);
+        }
+        syncExecutor().execute(new Runnable() {
             @Override
-            public void onFailure(Call<MessagesResponse> call, Throwable t) {
-                Log.e("flipcast", "Error fetching messages: " + t.getMessage());
-                if (callback != null) {
-                    callback.onFailure(call, t);
+            public void run() {
+                try {
+                    int count = syncMessages(config, id);
+                    int purged = TableInAppMessages.purgeExpired(FlipcastDataStore.getInstance(context), System.currentTimeMillis());
+                    if (count > 0 || purged > 0) {
+                        invalidateCounts(config, id);
+                        notifyMessagesChanged();
+                    }
+                    if (FlipcastLog.isLoggable(Log.DEBUG)) {
+                        FlipcastLog.d(TAG, "Messages synced successfully: " + count);
+                    }
+                    deliverSynced(completeSync(key), count);
+                } catch (Exception e) {
+                    FlipcastLog.e(TAG, "Error syncing messages", e);
+                    deliverSyncFailure(completeSync(key), e);
                 }
             }
         });
     }
 
+    private List<FlipcastSyncCallback> completeSync(String key) {
+        synchronized (syncsInFlight) {
+            return syncsInFlight.remove(key);
+        }
+    }
+
     /**
-     * Get all the unread messages by message type for a device from flipcast service
-     *
-     * @param config
-     * @param id
-     * @param messageType
-     * @param callback
+     * Notify the observers of the local message cache, if the authority of the provider is known
+     */
+    private void notifyMessagesChanged() {
+        if (authority != null) {
+            context.getContentResolver().notifyChange(new FlipcastUriGenerator(authority).generateUriForAllInAppMessages(), null);
+        }
+    }
+
+    private int syncMessages(String config, String id) throws IOException {
+        CacheUtils cacheUtils = new CacheUtils(context);
+        long since = cacheUtils.getHighWaterMark(config, id);
+        Call<ResponseBody> call = flipcastHttpClient.messagesSince(config, id, since);
+        Response<ResponseBody> response = call.execute();
+        if (response.code() == HTTP_NOT_MODIFIED) {
+            return 0;
+        }
+        if (!response.isSuccessful()) {
+            throw new IOException("Message sync failed with status: " + response.code());
+        }
+        ResponseBody body = response.body();
+        InAppMessageWriter writer;
+        FlipcastDataStore dataStore = FlipcastDataStore.getInstance(context);
+        try {
+            writer = dataStore.streamInAppMessages(new JsonReader(body.charStream()));
+        } finally {
+            body.close();
+        }
+        if (writer.getCount() == 0) {
+            return 0;
+        }
+        if (cacheUtils.getInAppCacheLimit() != -1 || cacheUtils.getInAppCacheByteLimit() != -1) {
+            TableInAppMessages.trim(dataStore, cacheUtils.getInAppCacheLimit(), cacheUtils.getInAppCacheByteLimit());
+        }
+        cacheUtils.setHighWaterMark(config, id, Math.max(since, writer.getMaxCreated()));
+        return writer.getCount();
+    }
+
+    /**
+     * Executor for the network work of syncs
+     */
+    private synchronized ExecutorService syncExecutor() {
+        if (syncExecutor == null) {
+            syncExecutor = Executors.newSingleThreadExecutor();
+            setupMainHandler();
+        }
+        return syncExecutor;
+    }
+
+    /**
+     * Executor for reads and writes of the local database, so that they never wait behind network calls
      */
-    public void messages(String config, String id, String messageType, final Callback<MessagesResponse> callback) {
-        Call<MessagesResponse> call = authenticationProvider == null ? flipcastHttpClient.messages(config, id, messageType) : flipcastHttpClient.messagesAuth
-                (String
-                .format("%s %s", authenticationProvider.prefix(), authenticationProvider.token()), config, id, messageType);
-        call.enqueue(new Callback<MessagesResponse>() {
+    private synchronized ExecutorService localExecutor() {
+        if (localExecutor == null) {
+            localExecutor = Executors.newSingleThreadExecutor();
+            setupMainHandler();
+        }
+        return localExecutor;
+    }
+
+    /**
+     * Executor for delivering the outbox, so that a long outbox never holds up syncs or local reads
+     */
+    private synchronized ExecutorService outboxExecutor() {
+        if (outboxExecutor == null) {
+            outboxExecutor = Executors.newSingleThreadExecutor();
+        }
+        return outboxExecutor;
+    }
+
+    private void setupMainHandler() {
+        if (mainHandler == null) {
+            mainHandler = new Handler(Looper.getMainLooper());
+        }
+    }
+
+    private void deliverSynced(final List<FlipcastSyncCallback> callbacks, final int count) {
+        if (callbacks.isEmpty()) {
+            return;
+        }
+        mainHandler.post(new Runnable() {
             @Override
-            public void onResponse(Call<MessagesResponse> call, Response<MessagesResponse> response) {
-                Log.i("flipcast", "Messages fetched successfully: " + response.body());
-                if (callback != null) {
-                    callback.onResponse(call, response);
+            public void run() {
+                for (FlipcastSyncCallback callback : callbacks) {
+                    callback.onSynced(count);
                 }
             }
+        });
+    }
 
+    private void deliverSyncFailure(final List<FlipcastSyncCallback> callbacks, final Throwable t) {
+        if (callbacks.isEmpty()) {
+            return;
+        }
+        mainHandler.post(new Runnable() {
             @Override
-            public void onFailure(Call<MessagesResponse> call, Throwable t) {
-                Log.e("flipcast", "Error fetching messages: " + t.getMessage());
-                if (callback != null) {
-                    callback.onFailure(call, t);
+            public void run() {
+                for (FlipcastSyncCallback callback : callbacks) {
+                    callback.onFailure(t);
                 }
             }
         });
     }
 
     /**
-     * Get all the unread messages by message type and priority for a device from flipcast service
-     *
-     * @param config
-     * @param id
-     * @param messageType
-     * @param callback
+     * Persist register, unregister and ack operations which fail because the device is offline and deliver them when
+     * connectivity returns. Requires the {@link Context} to be set while building the client.
+     */
+    public synchronized void enableOutbox() {
+        if (context == null) {
+            throw new IllegalStateException("Context is required for the outbox");
+        }
+        outboxEnabled = true;
+        if (connectivityReceiver == null) {
+            connectivityReceiver = new BroadcastReceiver() {
+                @Override
+                public void onReceive(Context context, Intent intent) {
+                    if (isConnected()) {
+                        drainOutbox();
+                    }
+                }
+            };
+            context.registerReceiver(connectivityReceiver, new IntentFilter(ConnectivityManager.CONNECTIVITY_ACTION));
+        }
+    }
+
+    /**
+     * Deliver all the pending operations in the outbox, oldest first. Stops at the first operation which cannot be
+     * delivered; the remaining operations are delivered on the next drain.
      */
-    public void messages(String config, String id, String messageType, String priority, final Callback<MessagesResponse> callback) {
-        Call<MessagesResponse> call = authenticationProvider == null ? flipcastHttpClient.messages(config, id, messageType, priority) : flipcastHttpClient
-                .messagesAuth(String
-                .format("%s %s", authenticationProvider.prefix(), authenticationProvider.token()), config, id, messageType, priority);
-        call.enqueue(new Callback<MessagesResponse>() {
+    public void drainOutbox() {
+        if (context == null) {
+            throw new IllegalStateException("Context is required for the outbox");
+        }
+        outboxExecutor().execute(new Runnable() {
             @Override
-            public void onResponse(Call<MessagesResponse> call, Response<MessagesResponse> response) {
-                Log.i("flipcast", "Message count fetched successfully: " + response.body());
-                if (callback != null) {
-                    callback.onResponse(call, response);
+            public void run() {
+                try {
+                    drainOutboxEntries();
+                } catch (Exception e) {
+                    FlipcastLog.w(TAG, "Outbox drain stopped: " + e.getMessage());
+                }
+            }
+        });
+    }
+
+    private void drainOutboxEntries() throws IOException {
+        FlipcastDataStore dataStore = FlipcastDataStore.getInstance(context);
+        while (true) {
+            List<TableOutbox.Entry> entries = TableOutbox.read(dataStore, OUTBOX_BATCH_SIZE);
+            if (entries.isEmpty()) {
+                return;
+            }
+            Map<String, List<TableOutbox.Entry>> acks = new HashMap<>();
+            for (TableOutbox.Entry entry : entries) {
+                switch (entry.getOperation()) {
+                    case TableOutbox.OPERATION_ACK:
+                        List<TableOutbox.Entry> configAcks = acks.get(entry.getConfigName());
+                        if (configAcks == null) {
+                            configAcks = new ArrayList<>();
+                            acks.put(entry.getConfigName(), configAcks);
+                        }
+                        configAcks.add(entry);
+                        break;
+                    case TableOutbox.OPERATION_REGISTER:
+                        deliverFromOutbox(dataStore, entry, registerCall(gson.fromJson(entry.getPayload(), DeviceData.class)).execute());
+                        break;
+                    case TableOutbox.OPERATION_UNREGISTER:
+                        deliverFromOutbox(dataStore, entry, unregisterCall(entry.getConfigName(), entry.getTargetId()).execute());
+                        break;
+                    default:
+                        TableOutbox.remove(dataStore, entry);
+                }
+            }
+            for (Map.Entry<String, List<TableOutbox.Entry>> configAcks : acks.entrySet()) {
+                deliverAcksFromOutbox(dataStore, configAcks.getKey(), configAcks.getValue());
+            }
+        }
+    }
+
+    private void deliverAcksFromOutbox(FlipcastDataStore dataStore, String config, List<TableOutbox.Entry> entries) throws IOException {
+        if (entries.size() > 1) {
+            List<String> ids = new ArrayList<>(entries.size());
+            for (TableOutbox.Entry entry : entries) {
+                ids.add(entry.getTargetId());
+            }
+            Response<List<MessageAckResponse>> response = ackBatchCall(config, ids).execute();
+            if (response.code() != 404 && response.code() != 405 && response.code() != 501) {
+                for (TableOutbox.Entry entry : entries) {
+                    deliverFromOutbox(dataStore, entry, response);
                 }
+                return;
             }
+        }
+        for (TableOutbox.Entry entry : entries) {
+            deliverFromOutbox(dataStore, entry, ackCall(config, entry.getTargetId()).execute());
+        }
+    }
 
+    /**
+     * Remove the entry once the server has answered with anything other than a transient failure
+     */
+    private void deliverFromOutbox(FlipcastDataStore dataStore, TableOutbox.Entry entry, Response<?> response) throws IOException {
+        int code = response.code();
+        if (code == 408 || code == 429 || code >= 500) {
+            throw new IOException("Outbox delivery failed with status: " + code);
+        }
+        if (!response.isSuccessful()) {
+            FlipcastLog.w(TAG, "Dropping outbox entry rejected by server: " + entry.getOperation() + " " + code);
+        }
+        TableOutbox.remove(dataStore, entry);
+    }
+
+    private void queueInOutbox(final String operation, final String config, final String id, final DeviceData request) {
+        if (!outboxEnabled) {
+            return;
+        }
+        localExecutor().execute(new Runnable() {
             @Override
-            public void onFailure(Call<MessagesResponse> call, Throwable t) {
-                Log.e("flipcast", "Error fetching messages: " + t.getMessage());
-                if (callback != null) {
-                    callback.onFailure(call, t);
+            public void run() {
+                FlipcastDataStore dataStore = FlipcastDataStore.getInstance(context);
+                switch (operation) {
+                    case TableOutbox.OPERATION_REGISTER:
+                        TableOutbox.enqueueRegister(dataStore, config, id, gson.toJson(request));
+                        break;
+                    case TableOutbox.OPERATION_UNREGISTER:
+                        TableOutbox.enqueueUnregister(dataStore, config, id);
+                        break;
+                    case TableOutbox.OPERATION_ACK:
+                        TableOutbox.enqueueAck(dataStore, config, id);
+                        break;
                 }
             }
         });
     }
 
-    public void ack(String config, String id, final Callback<MessageAckResponse> callback) {
-        Call<MessageAckResponse> call = authenticationProvider == null ? flipcastHttpClient.ack(config, id) : flipcastHttpClient.ack(String.format("%s %s",
-                authenticationProvider
-                .prefix(), authenticationProvider.token()), config, id);
-        call.enqueue(new Callback<MessageAckResponse>() {
+    private boolean isConnected() {
+        ConnectivityManager connectivityManager = (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        NetworkInfo networkInfo = connectivityManager.getActiveNetworkInfo();
+        return networkInfo != null && networkInfo.isConnected();
+    }
+
+    /**
+     * Invalidate the cached message counts whenever the local message cache changes, e.g. when the app inserts messages
+     * through {@link com.flipkart.flipcast.data.FlipcastDataProvider}. Requires the {@link Context} to be set while
+     * building the client.
+     *
+     * @param uri Uri pointing to all InAppMessages (see {@link com.flipkart.flipcast.data.FlipcastUriGenerator})
+     */
+    public void invalidateCountsOnChange(Uri uri) {
+        if (context == null) {
+            throw new IllegalStateException("Context is required for observing the message cache");
+        }
+        context.getContentResolver().registerContentObserver(uri, true, new ContentObserver(null) {
             @Override
-            public void onResponse(Call<MessageAckResponse> call, Response<MessageAckResponse> response) {
-                Log.i("flipcast", "Message acknowledged successfully: " + response.body());
-                if (callback != null) {
-                    callback.onResponse(call, response);
+            public void onChange(boolean selfChange) {
+                if (countCache != null) {
+                    countCache.clear();
+                }
+            }
+        });
+    }
+
+    /**
+     * Serve the count from the count cache or, when local counts are enabled, from the local message cache
+     *
+     * @return true if the callback has been (or will be) served without a network call
+     */
+    private boolean countFromCache(String key, String config, String id, String messageType, String priority, final
+    Callback<MessageCountResponse> callback) {
+        if (this.config.isLocalCount() && context != null) {
+            countLocally(config, id, messageType, priority, callback);
+            return true;
+        }
+        if (countCache == null) {
+            return false;
+        }
+        MessageCountResponse count = countCache.get(key);
+        if (count == null) {
+            return false;
+        }
+        if (callback != null) {
+            Response<MessageCountResponse> response = Response.success(count);
+            callback.onResponse(completedCount(config, id, messageType, priority, response, null), response);
+        }
+        return true;
+    }
+
+    /**
+     * Call handed over with counts served without a network request
+     */
+    private Call<MessageCountResponse> completedCount(final String config, final String id, final String messageType, final String priority,
+                                                      Response<MessageCountResponse> response, Throwable failure) {
+        if (failure != null) {
+            return new FlipcastCompletedCall<MessageCountResponse>(failure) {
+                @Override
+                protected Call<MessageCountResponse> create() {
+                    return countCall(config, id, messageType, priority);
                 }
+            };
+        }
+        return new FlipcastCompletedCall<MessageCountResponse>(response) {
+            @Override
+            protected Call<MessageCountResponse> create() {
+                return countCall(config, id, messageType, priority);
             }
+        };
+    }
 
+    private void countLocally(final String config, final String id, final String messageType, final String priority, final
+    Callback<MessageCountResponse> callback) {
+        localExecutor().execute(new Runnable() {
             @Override
-            public void onFailure(Call<MessageAckResponse> call, Throwable t) {
-                Log.e("flipcast", "Error fetching messages: " + t.getMessage());
-                if (callback != null) {
-                    callback.onFailure(call, t);
+            public void run() {
+                try {
+                    long count = TableInAppMessages.countUnread(FlipcastDataStore.getInstance(context), config, id, messageType, priority);
+                    final Response<MessageCountResponse> response = Response.success(MessageCountResponse.builder().count(count).build());
+                    if (callback != null) {
+                        mainHandler.post(new Runnable() {
+                            @Override
+                            public void run() {
+                                callback.onResponse(completedCount(config, id, messageType, priority, response, null), response);
+                            }
+                        });
+                    }
+                } catch (final Exception e) {
+                    FlipcastLog.e(TAG, "Error counting messages locally", e);
+                    if (callback != null) {
+                        mainHandler.post(new Runnable() {
+                            @Override
+                            public void run() {
+                                callback.onFailure(completedCount(config, id, messageType, priority, null, e), e);
+                            }
+                        });
+                    }
                 }
             }
         });
     }
 
+    private void cacheCount(String key, Response<MessageCountResponse> response) {
+        if (countCache != null && response.isSuccessful() && response.body() != null) {
+            countCache.put(key, response.body());
+        }
+    }
+
+    private void invalidateCounts(String config) {
+        if (countCache != null) {
+            countCache.invalidate(config);
+        }
+    }
+
+    private void invalidateCounts(String config, String id) {
+        if (countCache != null) {
+            countCache.invalidate(config, id);
+        }
+    }
+
+    private <T> Response<T> validated(Call<T> call, Response<T> response) {
+        return conditionalCache == null ? response : conditionalCache.resolve(call, response);
+    }
 
     /**
      * Use this function to set limit the size of InApp messages local cache
@@ -372,4 +969,151 @@ public class Flipcast {
         CacheUtils cacheUtils = new CacheUtils(context);
         cacheUtils.setInAppCacheLimit(limit);
     }
+
+    /**
+     * Use this function to limit the total size (in bytes) of the messages in the InApp messages local cache
+     *
+     * @param context
+     * @param limit
+     */
+    public void setInAppCacheByteLimit(final Context context, long limit) {
+        new CacheUtils(context).setInAppCacheByteLimit(limit);
+    }
+
+    /**
+     * Use this function to store message bodies longer than the threshold (in characters) compressed in the InApp
+     * messages local cache. Pass -1 to store all bodies as is.
+     *
+     * @param context
+     * @param threshold
+     */
+    public void setInAppCompressionThreshold(final Context context, int threshold) {
+        new CacheUtils(context).setInAppCompressionThreshold(threshold);
+    }
+
+    /**
+     * Operations sent through {@link #dispatch}, with the messages logged for them
+     */
+    private enum Operation {
+
+        REGISTER("Device registered successfully: ", "Error registering device"),
+        UNREGISTER("Device unregistered successfully: ", "Error unregistering device"),
+        COUNT("Message count fetched successfully: ", "Error fetching message count"),
+        MESSAGES("Messages fetched successfully: ", "Error fetching messages"),
+        ACK("Message acknowledged successfully: ", "Error acknowledging message");
+
+        private final String success;
+
+        private final String failure;
+
+        /**
+         * Callback for calls sent without one: failures are still logged
+         */
+        private final Callback<Object> unattended = new Callback<Object>() {
+            @Override
+            public void onResponse(Call<Object> call, Response<Object> response) {
+            }
+
+            @Override
+            public void onFailure(Call<Object> call, Throwable t) {
+                FlipcastLog.e(TAG, failure, t);
+            }
+        };
+
+        Operation(String success, String failure) {
+            this.success = success;
+            this.failure = failure;
+        }
+    }
+
+    /**
+     * Logs and post processes the response of an operation before handing it over to the caller
+     */
+    private class Dispatcher<T> implements Callback<T> {
+
+        private final Operation operation;
+
+        private final String config;
+
+        private final String id;
+
+        private final String key;
+
+        private final DeviceData request;
+
+        private final String fingerprint;
+
+        private final Callback<T> callback;
+
+        Dispatcher(Operation operation, String config, String id, String key, DeviceData request, String fingerprint, Callback<T> callback) {
+            this.operation = operation;
+            this.config = config;
+            this.id = id;
+            this.key = key;
+            this.request = request;
+            this.fingerprint = fingerprint;
+            this.callback = callback;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public void onResponse(Call<T> call, Response<T> response) {
+            switch (operation) {
+                case REGISTER:
+                    if (response.isSuccessful() && fingerprint != null && context != null) {
+                        new CacheUtils(context).setRegistrationFingerprint(config, id, fingerprint, System.currentTimeMillis());
+                    }
+                    break;
+                case UNREGISTER:
+                    if (response.isSuccessful() && context != null) {
+                        new CacheUtils(context).clearRegistrationFingerprint(config, id);
+                    }
+                    break;
+                case COUNT:
+                    response = validated(call, response);
+                    cacheCount(key, (Response<MessageCountResponse>) response);
+                    break;
+                case MESSAGES:
+                    response = validated(call, response);
+                    if (response.isSuccessful()) {
+                        invalidateCounts(config, id);
+                    }
+                    break;
+                case ACK:
+                    if (response.isSuccessful()) {
+                        invalidateCounts(config);
+                    }
+                    break;
+            }
+            if (FlipcastLog.isLoggable(Log.DEBUG)) {
+                FlipcastLog.d(TAG, operation.success + response.body());
+            }
+            if (callback != null) {
+                callback.onResponse(call, response);
+            }
+        }
+
+        @Override
+        public void onFailure(Call<T> call, Throwable t) {
+            FlipcastLog.e(TAG, operation.failure, t);
+            if (t instanceof IOException) {
+                switch (operation) {
+                    case REGISTER:
+                        queueInOutbox(TableOutbox.OPERATION_REGISTER, config, id, request);
+                        break;
+                    case UNREGISTER:
+                        queueInOutbox(TableOutbox.OPERATION_UNREGISTER, config, id, null);
+                        break;
+                    case ACK:
+                        queueInOutbox(TableOutbox.OPERATION_ACK, config, id, null);
+                        break;
+                    default:
+                        break;
+                }
+            }
+            if (callback != null) {
+                callback.onFailure(call, t);
+            }
+        }
+    }
 }
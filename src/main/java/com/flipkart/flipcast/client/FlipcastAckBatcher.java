@@ -0,0 +1,272 @@
+/*
+ * Copyright 2016 Phaneesh Nagaraja <phaneesh.n@gmail.com>.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package com.flipkart.flipcast.client;
+
+import com.flipkart.flipcast.core.MessageAckResponse;
+import com.flipkart.flipcast.log.FlipcastLog;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Request;
+import retrofit2.Call;
+import retrofit2.Callback;
+import retrofit2.Response;
+
+/**
+ * Coalesces message acknowledgements into batched requests. Acks are collected per config until either the batch
+ * window elapses or the batch reaches its maximum size, whichever happens first. Every caller gets its own
+ * {@link MessageAckResponse} through its own callback, along with the batch call. Acks left out of a batch response are
+ * sent again as single acknowledgements, so that an ack is never reported without the server confirming it.
+ * <p></p>
+ * If the server does not support the batch endpoint, batching is switched off and the pending acks are replayed
+ * as single acknowledgements.
+ *
+ * @author phaneesh
+ */
+class FlipcastAckBatcher {
+
+    private static final String TAG = "FlipcastAckBatcher";
+
+    private final Flipcast flipcast;
+
+    private final int maxBatchSize;
+
+    private final long batchWindow;
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+
+    private final Map<String, List<PendingAck>> pending = new HashMap<>();
+
+    private final Map<String, ScheduledFuture<?>> windows = new HashMap<>();
+
+    private volatile boolean batchingSupported = true;
+
+    FlipcastAckBatcher(Flipcast flipcast, int maxBatchSize, long batchWindow) {
+        this.flipcast = flipcast;
+        this.maxBatchSize = maxBatchSize;
+        this.batchWindow = batchWindow;
+    }
+
+    /**
+     * Queue an acknowledgement for the given message
+     *
+     * @param config
+     * @param id
+     * @param callback
+     */
+    void ack(final String config, String id, Callback<MessageAckResponse> callback) {
+        if (!batchingSupported) {
+            flipcast.ackCall(config, id).enqueue(callback);
+            return;
+        }
+        List<PendingAck> batch = null;
+        synchronized (this) {
+            List<PendingAck> acks = pending.get(config);
+            if (acks == null) {
+                acks = new ArrayList<>();
+                pending.put(config, acks);
+                windows.put(config, scheduler.schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        flush(config);
+                    }
+                }, batchWindow, TimeUnit.MILLISECONDS));
+            }
+            acks.add(new PendingAck(id, callback));
+            if (acks.size() >= maxBatchSize) {
+                batch = pending.remove(config);
+                cancelWindow(config);
+            }
+        }
+        if (batch != null) {
+            send(config, batch);
+        }
+    }
+
+    /**
+     * Send all the pending acknowledgements without waiting for the batch window
+     */
+    void flush() {
+        Map<String, List<PendingAck>> batches;
+        synchronized (this) {
+            batches = new HashMap<>(pending);
+            pending.clear();
+            for (ScheduledFuture<?> window : windows.values()) {
+                window.cancel(false);
+            }
+            windows.clear();
+        }
+        for (Map.Entry<String, List<PendingAck>> batch : batches.entrySet()) {
+            send(batch.getKey(), batch.getValue());
+        }
+    }
+
+    private void flush(String config) {
+        List<PendingAck> batch;
+        synchronized (this) {
+            batch = pending.remove(config);
+            windows.remove(config);
+        }
+        if (batch != null) {
+            send(config, batch);
+        }
+    }
+
+    private void cancelWindow(String config) {
+        ScheduledFuture<?> window = windows.remove(config);
+        if (window != null) {
+            window.cancel(false);
+        }
+    }
+
+    private void send(final String config, final List<PendingAck> batch) {
+        if (batch.size() == 1 || !batchingSupported) {
+            replay(config, batch);
+            return;
+        }
+        List<String> ids = new ArrayList<>(batch.size());
+        for (PendingAck ack : batch) {
+            ids.add(ack.id);
+        }
+        flipcast.ackBatchCall(config, ids).enqueue(new Callback<List<MessageAckResponse>>() {
+            @Override
+            public void onResponse(Call<List<MessageAckResponse>> call, Response<List<MessageAckResponse>> response) {
+                if (response.isSuccessful()) {
+                    deliver(config, batch, call, response);
+                } else if (isBatchingUnsupported(response.code())) {
+                    FlipcastLog.w(TAG, "Batched acknowledgement not supported by server. Falling back to single acknowledgements");
+                    batchingSupported = false;
+                    replay(config, batch);
+                } else {
+                    fail(config, batch, call, new IOException("Batched acknowledgement failed with status: " + response.code()));
+                }
+            }
+
+            @Override
+            public void onFailure(Call<List<MessageAckResponse>> call, Throwable t) {
+                fail(config, batch, call, t);
+            }
+        });
+    }
+
+    private void deliver(String config, List<PendingAck> batch, Call<List<MessageAckResponse>> call, Response<List<MessageAckResponse>>
+            response) {
+        Map<String, MessageAckResponse> acknowledged = new HashMap<>();
+        if (response.body() != null) {
+            for (MessageAckResponse ackResponse : response.body()) {
+                acknowledged.put(ackResponse.getMessageId(), ackResponse);
+            }
+        }
+        List<PendingAck> unconfirmed = new ArrayList<>();
+        for (PendingAck ack : batch) {
+            MessageAckResponse ackResponse = acknowledged.get(ack.id);
+            if (ackResponse == null) {
+                unconfirmed.add(ack);
+                continue;
+            }
+            Response<MessageAckResponse> ackResult = Response.success(ackResponse, response.headers());
+            ack.callback.onResponse(new BatchedAckCall(config, ack.id, call, ackResult, null), ackResult);
+        }
+        if (!unconfirmed.isEmpty()) {
+            FlipcastLog.w(TAG, "Batch response left out " + unconfirmed.size() + " acknowledgements. Sending them one by one");
+            replay(config, unconfirmed);
+        }
+    }
+
+    private void fail(String config, List<PendingAck> batch, Call<List<MessageAckResponse>> call, Throwable t) {
+        for (PendingAck ack : batch) {
+            ack.callback.onFailure(new BatchedAckCall(config, ack.id, call, null, t), t);
+        }
+    }
+
+    private void replay(String config, List<PendingAck> batch) {
+        for (PendingAck ack : batch) {
+            flipcast.ackCall(config, ack.id).enqueue(ack.callback);
+        }
+    }
+
+    private static boolean isBatchingUnsupported(int code) {
+        return code == 404 || code == 405 || code == 501;
+    }
+
+    /**
+     * Call handed over with an acknowledgement sent in a batch. It shares the request and the state of the batch call;
+     * a clone is a fresh single acknowledgement.
+     */
+    private class BatchedAckCall extends FlipcastCompletedCall<MessageAckResponse> {
+
+        private final String config;
+
+        private final String id;
+
+        private final Call<List<MessageAckResponse>> batchCall;
+
+        BatchedAckCall(String config, String id, Call<List<MessageAckResponse>> batchCall, Response<MessageAckResponse> response, Throwable
+                failure) {
+            super(response, failure);
+            this.config = config;
+            this.id = id;
+            this.batchCall = batchCall;
+        }
+
+        @Override
+        protected Call<MessageAckResponse> create() {
+            return flipcast.ackCall(config, id);
+        }
+
+        @Override
+        public boolean isExecuted() {
+            return batchCall.isExecuted();
+        }
+
+        @Override
+        public void cancel() {
+            batchCall.cancel();
+        }
+
+        @Override
+        public boolean isCanceled() {
+            return batchCall.isCanceled();
+        }
+
+        @Override
+        public Request request() {
+            return batchCall.request();
+        }
+    }
+
+    private static class PendingAck {
+
+        private final String id;
+
+        private final Callback<MessageAckResponse> callback;
+
+        PendingAck(String id, Callback<MessageAckResponse> callback) {
+            this.id = id;
+            this.callback = callback;
+        }
+    }
+}
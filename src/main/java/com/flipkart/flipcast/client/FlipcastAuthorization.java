@@ -0,0 +1,139 @@
+/*
+ * Copyright 2016 Phaneesh Nagaraja <phaneesh.n@gmail.com>.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package com.flipkart.flipcast.client;
+
+import java.io.IOException;
+
+import okhttp3.Authenticator;
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.Route;
+
+/**
+ * Adds the Authorization header to every request. The header is built from the {@link FlipcastAuthenticationProvider}
+ * and reused till the prefix or the token returned by the provider changes. Tokens of a {@link FlipcastExpiringAuthenticationProvider} are refreshed shortly before they expire.
+ * <p></p>
+ * Also answers 401 responses: the token is refreshed and the request replayed once with the new header. Concurrent
+ * 401s for the same header share a single refresh.
+ *
+ * @author phaneesh
+ */
+class FlipcastAuthorization implements Interceptor, Authenticator {
+
+    static final String HEADER_AUTHORIZATION = "Authorization";
+
+    private static final long REFRESH_AHEAD = 60000;
+
+    private final FlipcastAuthenticationProvider authenticationProvider;
+
+    private volatile Header cached;
+
+    FlipcastAuthorization(FlipcastAuthenticationProvider authenticationProvider) {
+        this.authenticationProvider = authenticationProvider;
+    }
+
+    /**
+     * @return value of the Authorization header
+     */
+    String header() {
+        if (isExpiring()) {
+            synchronized (this) {
+                if (isExpiring()) {
+                    ((FlipcastExpiringAuthenticationProvider) authenticationProvider).refresh();
+                }
+            }
+        }
+        return current();
+    }
+
+    /**
+     * Header for the current prefix and token of the provider, rebuilt only when either of them changes
+     */
+    private String current() {
+        String prefix = authenticationProvider.prefix();
+        String token = authenticationProvider.token();
+        Header current = cached;
+        if (current == null || !current.isFor(prefix, token)) {
+            current = new Header(prefix, token);
+            cached = current;
+        }
+        return current.value;
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        if (request.header(HEADER_AUTHORIZATION) != null) {
+            return chain.proceed(request);
+        }
+        return chain.proceed(request.newBuilder().header(HEADER_AUTHORIZATION, header()).build());
+    }
+
+    @Override
+    public Request authenticate(Route route, Response response) throws IOException {
+        String rejected = response.request().header(HEADER_AUTHORIZATION);
+        if (rejected == null || response.priorResponse() != null) {
+            //Not our header or already replayed once
+            return null;
+        }
+        String refreshed = refresh(rejected);
+        if (refreshed == null || refreshed.equals(rejected)) {
+            return null;
+        }
+        return response.request().newBuilder().header(HEADER_AUTHORIZATION, refreshed).build();
+    }
+
+    private synchronized String refresh(String rejected) {
+        if (rejected.equals(current()) && authenticationProvider instanceof FlipcastExpiringAuthenticationProvider) {
+            ((FlipcastExpiringAuthenticationProvider) authenticationProvider).refresh();
+        }
+        //Otherwise the token has changed already
+        return current();
+    }
+
+    private boolean isExpiring() {
+        if (!(authenticationProvider instanceof FlipcastExpiringAuthenticationProvider)) {
+            return false;
+        }
+        long expiresAt = ((FlipcastExpiringAuthenticationProvider) authenticationProvider).expiresAt();
+        return expiresAt > 0 && System.currentTimeMillis() >= expiresAt - REFRESH_AHEAD;
+    }
+
+    private static class Header {
+
+        private final String prefix;
+
+        private final String token;
+
+        private final String value;
+
+        Header(String prefix, String token) {
+            this.prefix = prefix;
+            this.token = token;
+            this.value = prefix + ' ' + token;
+        }
+
+        boolean isFor(String prefix, String token) {
+            return equal(this.prefix, prefix) && equal(this.token, token);
+        }
+
+        private static boolean equal(String a, String b) {
+            return a == null ? b == null : a.equals(b);
+        }
+    }
+}
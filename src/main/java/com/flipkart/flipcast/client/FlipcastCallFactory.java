@@ -0,0 +1,133 @@
+/*
+ * Copyright 2016 Phaneesh Nagaraja <phaneesh.n@gmail.com>.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package com.flipkart.flipcast.client;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Call factory which tags every request with a {@link Cancellation}, so that interceptors waiting between attempts can
+ * see when the call is cancelled. Interceptors of this OkHttp version have no access to the call itself.
+ *
+ * @author phaneesh
+ */
+class FlipcastCallFactory implements Call.Factory {
+
+    private final OkHttpClient okHttpClient;
+
+    FlipcastCallFactory(OkHttpClient okHttpClient) {
+        this.okHttpClient = okHttpClient;
+    }
+
+    @Override
+    public Call newCall(Request request) {
+        Cancellation cancellation = new Cancellation();
+        return new CancellableCall(okHttpClient.newCall(request.newBuilder().tag(cancellation).build()), cancellation);
+    }
+
+    /**
+     * Cancellation state of a call, carried as the tag of its request
+     */
+    static class Cancellation {
+
+        private boolean canceled;
+
+        /**
+         * @return cancellation state of the call which sent the request, or null if it was not built by this factory
+         */
+        static Cancellation of(Request request) {
+            return request.tag() instanceof Cancellation ? (Cancellation) request.tag() : null;
+        }
+
+        synchronized void cancel() {
+            canceled = true;
+            notifyAll();
+        }
+
+        synchronized boolean isCanceled() {
+            return canceled;
+        }
+
+        /**
+         * Wait for the given delay, returning early with an exception if the call is cancelled meanwhile
+         */
+        synchronized void await(long delay) throws IOException {
+            long deadline = System.currentTimeMillis() + delay;
+            try {
+                for (long remaining = delay; remaining > 0 && !canceled; remaining = deadline - System.currentTimeMillis()) {
+                    wait(remaining);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting to retry");
+            }
+            if (canceled) {
+                throw new IOException("Canceled");
+            }
+        }
+    }
+
+    private static class CancellableCall implements Call {
+
+        private final Call call;
+
+        private final Cancellation cancellation;
+
+        CancellableCall(Call call, Cancellation cancellation) {
+            this.call = call;
+            this.cancellation = cancellation;
+        }
+
+        @Override
+        public Request request() {
+            return call.request();
+        }
+
+        @Override
+        public Response execute() throws IOException {
+            return call.execute();
+        }
+
+        @Override
+        public void enqueue(Callback responseCallback) {
+            call.enqueue(responseCallback);
+        }
+
+        @Override
+        public void cancel() {
+            cancellation.cancel();
+            call.cancel();
+        }
+
+        @Override
+        public boolean isExecuted() {
+            return call.isExecuted();
+        }
+
+        @Override
+        public boolean isCanceled() {
+            return call.isCanceled();
+        }
+    }
+}
@@ -0,0 +1,29 @@
+/*
+ * Copyright 2016 Phaneesh Nagaraja <phaneesh.n@gmail.com>.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package com.flipkart.flipcast.client;
+
+/**
+ * To be implemented by the {@link android.app.Application} of apps using the background sync scheduled with
+ * {@link FlipcastSyncScheduler}, so that the scheduled syncs run with the client configured by the app.
+ *
+ * @author phaneesh
+ */
+public interface FlipcastClientProvider {
+
+    Flipcast getFlipcast();
+
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2016 Phaneesh Nagaraja <phaneesh.n@gmail.com>.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package com.flipkart.flipcast.client;
+
+import java.io.IOException;
+
+import okhttp3.Request;
+import retrofit2.Call;
+import retrofit2.Callback;
+import retrofit2.Response;
+
+/**
+ * {@link Call} handed over with results served without a network request, e.g. from a cache. It behaves like a call
+ * that has already been executed. The call which would have been sent is built by {@link #create()} only if the caller
+ * asks for its request or clones it.
+ *
+ * @author phaneesh
+ */
+abstract class FlipcastCompletedCall<T> implements Call<T> {
+
+    private final Response<T> response;
+
+    private final Throwable failure;
+
+    private Call<T> call;
+
+    FlipcastCompletedCall(Response<T> response) {
+        this(response, null);
+    }
+
+    FlipcastCompletedCall(Throwable failure) {
+        this(null, failure);
+    }
+
+    /**
+     * @param response response to be replayed, if the call succeeded
+     * @param failure  failure to be replayed, if the call failed
+     */
+    FlipcastCompletedCall(Response<T> response, Throwable failure) {
+        this.response = response;
+        this.failure = failure;
+    }
+
+    /**
+     * @return the call which would have been sent to the service
+     */
+    protected abstract Call<T> create();
+
+    private synchronized Call<T> call() {
+        if (call == null) {
+            call = create();
+        }
+        return call;
+    }
+
+    @Override
+    public Response<T> execute() throws IOException {
+        if (failure == null) {
+            return response;
+        }
+        if (failure instanceof IOException) {
+            throw (IOException) failure;
+        }
+        throw new IOException(failure);
+    }
+
+    @Override
+    public void enqueue(Callback<T> callback) {
+        if (failure == null) {
+            callback.onResponse(this, response);
+        } else {
+            callback.onFailure(this, failure);
+        }
+    }
+
+    @Override
+    public boolean isExecuted() {
+        return true;
+    }
+
+    @Override
+    public void cancel() {
+    }
+
+    @Override
+    public boolean isCanceled() {
+        return false;
+    }
+
+    /**
+     * A clone is a fresh call to the service, like the clone of any other executed call
+     */
+    @Override
+    public Call<T> clone() {
+        return call().clone();
+    }
+
+    @Override
+    public Request request() {
+        return call().request();
+    }
+}
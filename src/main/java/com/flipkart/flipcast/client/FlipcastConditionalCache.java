@@ -0,0 +1,114 @@
+/*
+ * Copyright 2016 Phaneesh Nagaraja <phaneesh.n@gmail.com>.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package com.flipkart.flipcast.client;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import retrofit2.Call;
+import retrofit2.Response;
+
+/**
+ * Remembers the validators (ETag / Last-Modified) of the last successful response along with the parsed body.
+ * Requests for the same url (which identifies config, device id, message type and priority) are sent with
+ * conditional headers and a 304 from the server is answered with the previously parsed body, so the converter
+ * never runs for unchanged responses.
+ *
+ * @author phaneesh
+ */
+class FlipcastConditionalCache implements Interceptor {
+
+    private static final String HEADER_ETAG = "ETag";
+
+    private static final String HEADER_LAST_MODIFIED = "Last-Modified";
+
+    private static final String HEADER_IF_NONE_MATCH = "If-None-Match";
+
+    private static final String HEADER_IF_MODIFIED_SINCE = "If-Modified-Since";
+
+    private static final int HTTP_NOT_MODIFIED = 304;
+
+    private final Map<String, Validator> validators = new ConcurrentHashMap<>();
+
+    @Override
+    public okhttp3.Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        if (!"GET".equals(request.method())) {
+            return chain.proceed(request);
+        }
+        Validator validator = validators.get(request.url().toString());
+        if (validator == null) {
+            return chain.proceed(request);
+        }
+        Request.Builder conditional = request.newBuilder();
+        if (validator.etag != null) {
+            conditional.header(HEADER_IF_NONE_MATCH, validator.etag);
+        }
+        if (validator.lastModified != null) {
+            conditional.header(HEADER_IF_MODIFIED_SINCE, validator.lastModified);
+        }
+        return chain.proceed(conditional.build());
+    }
+
+    /**
+     * Remember the validators of a successful response or replace a 304 with the previously parsed body
+     *
+     * @param call
+     * @param response
+     * @return response to be handed over to the caller
+     */
+    @SuppressWarnings("unchecked")
+    <T> Response<T> resolve(Call<T> call, Response<T> response) {
+        String key = call.request().url().toString();
+        if (response.code() == HTTP_NOT_MODIFIED) {
+            Validator validator = validators.get(key);
+            if (validator != null) {
+                return Response.success((T) validator.body, response.headers());
+            }
+            return response;
+        }
+        if (response.isSuccessful() && response.body() != null) {
+            String etag = response.headers().get(HEADER_ETAG);
+            String lastModified = response.headers().get(HEADER_LAST_MODIFIED);
+            if (etag != null || lastModified != null) {
+                validators.put(key, new Validator(etag, lastModified, response.body()));
+            } else {
+                validators.remove(key);
+            }
+        }
+        return response;
+    }
+
+    private static class Validator {
+
+        private final String etag;
+
+        private final String lastModified;
+
+        private final Object body;
+
+        Validator(String etag, String lastModified, Object body) {
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.body = body;
+        }
+    }
+}
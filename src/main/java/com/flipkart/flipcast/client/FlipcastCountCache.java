@@ -0,0 +1,103 @@
+/*
+ * Copyright 2016 Phaneesh Nagaraja <phaneesh.n@gmail.com>.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package com.flipkart.flipcast.client;
+
+import android.os.SystemClock;
+
+import com.flipkart.flipcast.core.MessageCountResponse;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Short lived cache of message counts, keyed the same way as requests in {@link FlipcastSingleFlight}. Entries
+ * expire after the configured time to live and are invalidated when messages are acknowledged or fetched.
+ *
+ * @author phaneesh
+ */
+class FlipcastCountCache {
+
+    private final long ttl;
+
+    private final Map<String, Entry> counts = new ConcurrentHashMap<>();
+
+    FlipcastCountCache(long ttl) {
+        this.ttl = ttl;
+    }
+
+    MessageCountResponse get(String key) {
+        Entry entry = counts.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (SystemClock.elapsedRealtime() >= entry.expiresAt) {
+            counts.remove(key);
+            return null;
+        }
+        return entry.count;
+    }
+
+    void put(String key, MessageCountResponse count) {
+        counts.put(key, new Entry(count, SystemClock.elapsedRealtime() + ttl));
+    }
+
+    /**
+     * Invalidate the counts of all the devices of a config
+     *
+     * @param config
+     */
+    void invalidate(String config) {
+        invalidatePrefix("count/" + config + "/");
+    }
+
+    /**
+     * Invalidate the counts of a device
+     *
+     * @param config
+     * @param id
+     */
+    void invalidate(String config, String id) {
+        invalidatePrefix("count/" + config + "/" + id + "/");
+    }
+
+    void clear() {
+        counts.clear();
+    }
+
+    private void invalidatePrefix(String prefix) {
+        Iterator<String> keys = counts.keySet().iterator();
+        while (keys.hasNext()) {
+            if (keys.next().startsWith(prefix)) {
+                keys.remove();
+            }
+        }
+    }
+
+    private static class Entry {
+
+        private final MessageCountResponse count;
+
+        private final long expiresAt;
+
+        Entry(MessageCountResponse count, long expiresAt) {
+            this.count = count;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
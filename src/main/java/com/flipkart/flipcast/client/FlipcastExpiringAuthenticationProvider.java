@@ -0,0 +1,37 @@
+/*
+ * Copyright 2016 Phaneesh Nagaraja <phaneesh.n@gmail.com>.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package com.flipkart.flipcast.client;
+
+/**
+ * {@link FlipcastAuthenticationProvider} for tokens with a limited lifetime. The token is refreshed shortly before it
+ * expires and whenever the service rejects it with a 401.
+ *
+ * @author phaneesh
+ */
+public interface FlipcastExpiringAuthenticationProvider extends FlipcastAuthenticationProvider {
+
+    /**
+     * @return expiry of the current token in milliseconds since epoch or 0 if the expiry is not known
+     */
+    long expiresAt();
+
+    /**
+     * Obtain a new token. Called on a background thread and never concurrently.
+     */
+    void refresh();
+
+}
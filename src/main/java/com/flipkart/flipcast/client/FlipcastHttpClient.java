@@ -22,16 +22,22 @@ import com.flipkart.flipcast.core.MessageAckResponse;
 import com.flipkart.flipcast.core.MessageCountResponse;
 import com.flipkart.flipcast.core.MessagesResponse;
 
+import java.util.List;
+
+import okhttp3.ResponseBody;
 import retrofit2.Call;
 import retrofit2.Response;
 import retrofit2.http.Body;
 import retrofit2.http.DELETE;
 import retrofit2.http.GET;
-import retrofit2.http.Header;
 import retrofit2.http.POST;
 import retrofit2.http.Path;
+import retrofit2.http.Query;
+import retrofit2.http.Streaming;
 
 /**
+ * The Authorization header, if any, is added by {@link FlipcastAuthorization}
+ *
  * @author phaneesh
  */
 public interface FlipcastHttpClient {
@@ -39,56 +45,35 @@ public interface FlipcastHttpClient {
     @POST("flipcast/device/{config}/deviceId/{id}")
     Call<DeviceData> register(@Path("config") String config, @Path("id") String id, @Body DeviceData registerRequest);
 
-    @POST("flipcast/device/{config}/deviceId/{id}")
-    Call<DeviceData> register(@Header("Authorization") String authToken, @Path("config") String config, @Path("id") String id, @Body DeviceData registerRequest);
-
     @DELETE("flipcast/device/{config}/deviceId/{id}")
     Call<Response> unregister(@Path("config") String config, @Path("id") String id);
 
-    @DELETE("flipcast/device/{config}/deviceId/{id}")
-    Call<Response> unregister(@Header("Authorization") String authToken, @Path("config") String config, @Path("id") String id);
-
     @GET("flipcast/inapp/message/count/{config}/{id}")
     Call<MessageCountResponse> count(@Path("config") String config, @Path("id") String id);
 
-    @GET("flipcast/inapp/message/count/{config}/{id}")
-    Call<MessageCountResponse> countAuth(@Header("Authorization") String authToken, @Path("config") String config, @Path("id") String id);
-
     @GET("flipcast/inapp/message/count/{config}/{id}/{messageType}")
     Call<MessageCountResponse> count(@Path("config") String config, @Path("id") String id, @Path("messageType") String messageType);
 
-    @GET("flipcast/inapp/message/count/{config}/{id}/{messageType}")
-    Call<MessageCountResponse> countAuth(@Header("Authorization") String authToken, @Path("config") String config, @Path("id") String id, @Path("messageType") String messageType);
-
     @GET("flipcast/inapp/message/count/{config}/{id}/{messageType}/{priority}")
     Call<MessageCountResponse> count(@Path("config") String config, @Path("id") String id, @Path("messageType") String messageType, @Path("priority") String priority);
 
-    @GET("flipcast/inapp/message/count/{config}/{id}/{messageType}/{priority}")
-    Call<MessageCountResponse> countAuth(@Header("Authorization") String authToken, @Path("config") String config, @Path("id") String id, @Path("messageType") String messageType, @Path("priority") String priority);
-
-
     @GET("flipcast/inapp/messages/{config}/{id}")
     Call<MessagesResponse> messages(@Path("config") String config, @Path("id") String id);
 
-    @GET("flipcast/inapp/messages/{config}/{id}")
-    Call<MessagesResponse> messagesAuth(@Header("Authorization") String authToken, @Path("config") String config, @Path("id") String id);
-
     @GET("flipcast/inapp/messages/{config}/{id}/{messageType}")
     Call<MessagesResponse> messages(@Path("config") String config, @Path("id") String id, @Path("messageType") String messageType);
 
-    @GET("flipcast/inapp/messages/{config}/{id}/{messageType}")
-    Call<MessagesResponse> messagesAuth(@Header("Authorization") String authToken, @Path("config") String config, @Path("id") String id, @Path("messageType") String messageType);
-
     @GET("flipcast/inapp/messages/{config}/{id}/{messageType}/{priority}")
     Call<MessagesResponse> messages(@Path("config") String config, @Path("id") String id, @Path("messageType") String messageType, @Path("priority") String priority);
 
-    @GET("flipcast/inapp/messages/{config}/{id}/{messageType}/{priority}")
-    Call<MessagesResponse> messagesAuth(@Header("Authorization") String authToken, @Path("config") String config, @Path("id") String id, @Path("messageType") String messageType, @Path("priority") String priority);
+    @Streaming
+    @GET("flipcast/inapp/messages/{config}/{id}")
+    Call<ResponseBody> messagesSince(@Path("config") String config, @Path("id") String id, @Query("since") long since);
 
     @POST("flipcast/inapp/messages/ack/{config}/{id}")
     Call<MessageAckResponse> ack(@Path("config") String config, @Path("id") String id);
 
-    @POST("flipcast/inapp/messages/ack/{config}/{id}")
-    Call<MessageAckResponse> ack(@Header("Authorization") String authToken, @Path("config") String config, @Path("id") String id);
+    @POST("flipcast/inapp/messages/ack/{config}")
+    Call<List<MessageAckResponse>> ackBatch(@Path("config") String config, @Body List<String> ids);
 
 }
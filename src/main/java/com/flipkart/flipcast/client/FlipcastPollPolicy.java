@@ -0,0 +1,60 @@
+/*
+ * Copyright 2016 Phaneesh Nagaraja <phaneesh.n@gmail.com>.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package com.flipkart.flipcast.client;
+
+import com.flipkart.flipcast.config.FlipcastConfig;
+
+/**
+ * Adapts the background sync interval to the arrival rate of messages. The interval is halved after a sync that
+ * brought new messages and doubled after an empty, unmodified or failed sync, always staying within the bounds set
+ * using `pollMinInterval` & `pollMaxInterval` in {@link FlipcastConfig}.
+ *
+ * @author phaneesh
+ */
+class FlipcastPollPolicy {
+
+    private final long minInterval;
+
+    private final long maxInterval;
+
+    FlipcastPollPolicy(FlipcastConfig config) {
+        this.minInterval = config.getPollMinInterval();
+        this.maxInterval = Math.max(config.getPollMinInterval(), config.getPollMaxInterval());
+    }
+
+    /**
+     * @param interval current interval
+     * @param count    number of messages brought in by the last sync
+     * @return interval until the next sync
+     */
+    long next(long interval, int count) {
+        return count > 0 ? clamp(interval / 2) : backOff(interval);
+    }
+
+    /**
+     * @param interval current interval
+     * @return interval until the next sync after an empty or failed sync
+     */
+    long backOff(long interval) {
+        //Guard against overflow for absurd bounds
+        return clamp(interval > maxInterval / 2 ? maxInterval : interval * 2);
+    }
+
+    long clamp(long interval) {
+        return Math.min(maxInterval, Math.max(minInterval, interval));
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright 2016 Phaneesh Nagaraja <phaneesh.n@gmail.com>.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package com.flipkart.flipcast.client;
+
+import android.annotation.TargetApi;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Build;
+import android.os.Handler;
+import android.os.PowerManager;
+
+import com.flipkart.flipcast.log.FlipcastLog;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Runs the background sync scheduled with {@link FlipcastSyncScheduler}, schedules the next one based on the outcome
+ * and restores the schedule after the device reboots. Overlapping runs for the same device are coalesced by {@link Flipcast#sync(String, String, FlipcastSyncCallback)}.
+ * <p></p>
+ * The sync outlives {@link #onReceive(Context, Intent)}, so a partial wake lock is held until it completes and, from
+ * API 11, the broadcast is kept pending through {@link #goAsync()} so that the process is not killed meanwhile. Both are
+ * released after {@link #SYNC_TIMEOUT} at the latest.
+ *
+ * @author phaneesh
+ */
+public class FlipcastPollReceiver extends BroadcastReceiver {
+
+    private static final String TAG = "FlipcastPollReceiver";
+
+    /**
+     * Upper bound (in milliseconds) for holding the wake lock and the pending broadcast. The sync itself carries on
+     * after that; the next poll is already scheduled.
+     */
+    private static final long SYNC_TIMEOUT = 30000;
+
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        final FlipcastSyncScheduler scheduler = new FlipcastSyncScheduler(context);
+        if (Intent.ACTION_BOOT_COMPLETED.equals(intent.getAction())) {
+            scheduler.restore();
+            return;
+        }
+        if (!FlipcastSyncScheduler.ACTION_POLL.equals(intent.getAction())) {
+            return;
+        }
+        String[] target = scheduler.target();
+        if (target == null) {
+            return;
+        }
+        Context application = context.getApplicationContext();
+        if (!(application instanceof FlipcastClientProvider)) {
+            FlipcastLog.w(TAG, "Application does not implement FlipcastClientProvider. Skipping background sync");
+            return;
+        }
+        Flipcast flipcast = ((FlipcastClientProvider) application).getFlipcast();
+        if (flipcast == null) {
+            return;
+        }
+        if (!flipcast.canSync()) {
+            FlipcastLog.w(TAG, "Flipcast client was built without a context. Skipping background sync");
+            return;
+        }
+        final FlipcastPollPolicy policy = new FlipcastPollPolicy(flipcast.getConfig());
+        final long interval = policy.clamp(scheduler.interval());
+        //Keep polling (backed off) even if the process dies before the sync completes
+        scheduler.reschedule(policy.backOff(interval));
+        final Completion completion = new Completion(context, Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB ? PendingBroadcast.of
+                (this) : null);
+        try {
+            flipcast.sync(target[0], target[1], new FlipcastSyncCallback() {
+                @Override
+                public void onSynced(int count) {
+                    scheduler.reschedule(policy.next(interval, count));
+                    completion.finish();
+                }
+
+                @Override
+                public void onFailure(Throwable t) {
+                    scheduler.reschedule(policy.backOff(interval));
+                    completion.finish();
+                }
+            });
+        } catch (RuntimeException e) {
+            FlipcastLog.w(TAG, "Could not start background sync");
+            completion.finish();
+        }
+    }
+
+    /**
+     * Keeps the device awake and the broadcast pending until the sync completes or times out, whichever happens first
+     */
+    private static class Completion implements Runnable {
+
+        private final PowerManager.WakeLock wakeLock;
+
+        private final PendingBroadcast pendingBroadcast;
+
+        private final AtomicBoolean finished = new AtomicBoolean();
+
+        Completion(Context context, PendingBroadcast pendingBroadcast) {
+            PowerManager powerManager = (PowerManager) context.getSystemService(Context.POWER_SERVICE);
+            this.wakeLock = powerManager.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK, TAG);
+            this.wakeLock.setReferenceCounted(false);
+            this.wakeLock.acquire(SYNC_TIMEOUT);
+            this.pendingBroadcast = pendingBroadcast;
+            new Handler().postDelayed(this, SYNC_TIMEOUT);
+        }
+
+        @Override
+        public void run() {
+            if (!finished.get()) {
+                FlipcastLog.w(TAG, "Background sync did not complete in time. Releasing wake lock");
+                finish();
+            }
+        }
+
+        void finish() {
+            if (!finished.compareAndSet(false, true)) {
+                return;
+            }
+            if (pendingBroadcast != null) {
+                pendingBroadcast.finish();
+            }
+            wakeLock.release();
+        }
+    }
+
+    /**
+     * {@link android.content.BroadcastReceiver.PendingResult} kept in its own class, so that it is loaded only from API 11
+     */
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    private static class PendingBroadcast {
+
+        private final PendingResult pendingResult;
+
+        private PendingBroadcast(PendingResult pendingResult) {
+            this.pendingResult = pendingResult;
+        }
+
+        static PendingBroadcast of(BroadcastReceiver receiver) {
+            return new PendingBroadcast(receiver.goAsync());
+        }
+
+        void finish() {
+            pendingResult.finish();
+        }
+    }
+}
@@ -0,0 +1,232 @@
+/*
+ * Copyright 2016 Phaneesh Nagaraja <phaneesh.n@gmail.com>.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package com.flipkart.flipcast.client;
+
+import android.os.SystemClock;
+
+import com.flipkart.flipcast.config.FlipcastConfig;
+import com.flipkart.flipcast.log.FlipcastLog;
+
+import java.io.IOException;
+import java.util.Date;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Resilience layer for all the calls made to the flipcast service.
+ * <ul>
+ * <li>Idempotent requests (GETs and message acknowledgements) failing with an I/O error or a retryable status are
+ * retried with capped exponential backoff and full jitter. A Retry-After header from the server, in seconds or as an
+ * HTTP date, is honored. Cancelling the call ends the wait between attempts.</li>
+ * <li>A circuit breaker per host fails requests fast once the configured number of consecutive failures is reached.
+ * After the open duration a single trial request is let through, which closes the circuit on success.</li>
+ * </ul>
+ * All the settings come from {@link FlipcastConfig}.
+ *
+ * @author phaneesh
+ */
+class FlipcastRetryInterceptor implements Interceptor {
+
+    private static final String TAG = "FlipcastRetry";
+
+    private static final String HEADER_RETRY_AFTER = "Retry-After";
+
+    private static final String HEADER_DATE = "Date";
+
+    private static final String ACK_PATH = "/inapp/messages/ack/";
+
+    private final int maxRetries;
+
+    private final long baseDelay;
+
+    private final long maxDelay;
+
+    private final int circuitBreakerThreshold;
+
+    private final long circuitBreakerOpenDuration;
+
+    private final ConcurrentMap<String, CircuitBreaker> circuitBreakers = new ConcurrentHashMap<>();
+
+    private final Random random = new Random();
+
+    FlipcastRetryInterceptor(FlipcastConfig config) {
+        this.maxRetries = config.getMaxRetries();
+        this.baseDelay = config.getRetryBaseDelay();
+        this.maxDelay = config.getRetryMaxDelay();
+        this.circuitBreakerThreshold = config.getCircuitBreakerThreshold();
+        this.circuitBreakerOpenDuration = config.getCircuitBreakerOpenDuration();
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        CircuitBreaker circuitBreaker = circuitBreaker(request.url().host());
+        if (circuitBreaker != null && !circuitBreaker.allowRequest()) {
+            throw new IOException("Circuit open for host: " + request.url().host());
+        }
+        boolean retryable = maxRetries > 0 && isIdempotent(request);
+        FlipcastCallFactory.Cancellation cancellation = FlipcastCallFactory.Cancellation.of(request);
+        int attempt = 0;
+        while (true) {
+            Response response = null;
+            IOException failure = null;
+            try {
+                response = chain.proceed(request);
+            } catch (IOException e) {
+                failure = e;
+            }
+            if (failure == null && !isRetryableStatus(response.code())) {
+                if (circuitBreaker != null) {
+                    circuitBreaker.onSuccess();
+                }
+                return response;
+            }
+            if (circuitBreaker != null) {
+                circuitBreaker.onFailure();
+            }
+            if (!retryable || attempt >= maxRetries || (cancellation != null && cancellation.isCanceled()) || (circuitBreaker != null && !circuitBreaker.allowRequest())) {
+                if (failure != null) {
+                    throw failure;
+                }
+                return response;
+            }
+            long delay = delay(attempt, response);
+            if (response != null) {
+                response.body().close();
+            }
+            FlipcastLog.w(TAG, "Retrying request after failure");
+            sleep(delay, cancellation);
+            attempt++;
+        }
+    }
+
+    private CircuitBreaker circuitBreaker(String host) {
+        if (circuitBreakerThreshold <= 0) {
+            return null;
+        }
+        CircuitBreaker circuitBreaker = circuitBreakers.get(host);
+        if (circuitBreaker == null) {
+            CircuitBreaker created = new CircuitBreaker(circuitBreakerThreshold, circuitBreakerOpenDuration);
+            circuitBreaker = circuitBreakers.putIfAbsent(host, created);
+            if (circuitBreaker == null) {
+                circuitBreaker = created;
+            }
+        }
+        return circuitBreaker;
+    }
+
+    /**
+     * Delay before the next attempt: Retry-After if sent by the server, otherwise a random delay between 0 and the
+     * exponential backoff for the attempt. Always capped at the maximum delay.
+     */
+    private long delay(int attempt, Response response) {
+        if (response != null) {
+            long retryAfter = retryAfter(response);
+            if (retryAfter >= 0) {
+                return Math.min(maxDelay, retryAfter);
+            }
+        }
+        long backoff = Math.min(maxDelay, baseDelay << Math.min(attempt, 30));
+        return (long) (random.nextDouble() * backoff);
+    }
+
+    /**
+     * Retry-After in milliseconds, given either as seconds or as an HTTP date. A date is measured against the Date
+     * header of the response when present, so that the device clock does not skew it. -1 if absent or malformed.
+     */
+    private static long retryAfter(Response response) {
+        String retryAfter = response.header(HEADER_RETRY_AFTER);
+        if (retryAfter == null) {
+            return -1;
+        }
+        try {
+            return Math.max(0, Long.parseLong(retryAfter.trim()) * 1000);
+        } catch (NumberFormatException e) {
+            //Not in seconds; try an HTTP date
+        }
+        Date retryAt = response.headers().getDate(HEADER_RETRY_AFTER);
+        if (retryAt == null) {
+            return -1;
+        }
+        Date now = response.headers().getDate(HEADER_DATE);
+        return Math.max(0, retryAt.getTime() - (now == null ? System.currentTimeMillis() : now.getTime()));
+    }
+
+    private static void sleep(long delay, FlipcastCallFactory.Cancellation cancellation) throws IOException {
+        if (cancellation == null) {
+            cancellation = new FlipcastCallFactory.Cancellation();
+        }
+        cancellation.await(delay);
+    }
+
+    private static boolean isIdempotent(Request request) {
+        String method = request.method();
+        return "GET".equals(method) || "HEAD".equals(method) || ("POST".equals(method) && request.url().encodedPath().contains(ACK_PATH));
+    }
+
+    private static boolean isRetryableStatus(int code) {
+        return code == 408 || code == 429 || code == 500 || code == 502 || code == 503 || code == 504;
+    }
+
+    private static class CircuitBreaker {
+
+        private final int threshold;
+
+        private final long openDuration;
+
+        private int failures;
+
+        private long openedAt;
+
+        private boolean trialInFlight;
+
+        CircuitBreaker(int threshold, long openDuration) {
+            this.threshold = threshold;
+            this.openDuration = openDuration;
+        }
+
+        synchronized boolean allowRequest() {
+            if (failures < threshold) {
+                return true;
+            }
+            if (!trialInFlight && SystemClock.elapsedRealtime() - openedAt >= openDuration) {
+                trialInFlight = true;
+                return true;
+            }
+            return false;
+        }
+
+        synchronized void onSuccess() {
+            failures = 0;
+            trialInFlight = false;
+        }
+
+        synchronized void onFailure() {
+            failures++;
+            trialInFlight = false;
+            if (failures >= threshold) {
+                openedAt = SystemClock.elapsedRealtime();
+            }
+        }
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2016 Phaneesh Nagaraja <phaneesh.n@gmail.com>.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package com.flipkart.flipcast.client;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import retrofit2.Call;
+import retrofit2.Callback;
+import retrofit2.Response;
+
+/**
+ * Deduplicates identical requests while they are in flight. The first caller for a key starts the call; callers for
+ * the same key arriving before it completes are attached to it and receive the same response.
+ *
+ * @author phaneesh
+ */
+class FlipcastSingleFlight {
+
+    private final Map<String, List<Callback<?>>> inFlight = new HashMap<>();
+
+    /**
+     * Enqueue the call unless a call with the same key is already in flight, in which case the callback is attached to
+     * the call in flight
+     *
+     * @param key      identifies the request (endpoint and its parameters)
+     * @param call     call to be enqueued if no identical request is in flight
+     * @param callback callback to be notified
+     */
+    <T> void enqueue(final String key, Call<T> call, Callback<T> callback) {
+        synchronized (this) {
+            List<Callback<?>> waiting = inFlight.get(key);
+            if (waiting != null) {
+                waiting.add(callback);
+                return;
+            }
+            waiting = new ArrayList<>(2);
+            waiting.add(callback);
+            inFlight.put(key, waiting);
+        }
+        call.enqueue(new Callback<T>() {
+            @Override
+            public void onResponse(Call<T> call, Response<T> response) {
+                for (Callback<T> waiting : FlipcastSingleFlight.this.<T>complete(key)) {
+                    waiting.onResponse(call, response);
+                }
+            }
+
+            @Override
+            public void onFailure(Call<T> call, Throwable t) {
+                for (Callback<T> waiting : FlipcastSingleFlight.this.<T>complete(key)) {
+                    waiting.onFailure(call, t);
+                }
+            }
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private synchronized <T> List<Callback<T>> complete(String key) {
+        List<Callback<?>> waiting = inFlight.remove(key);
+        List<Callback<T>> callbacks = new ArrayList<>(waiting.size());
+        for (Callback<?> callback : waiting) {
+            callbacks.add((Callback<T>) callback);
+        }
+        return callbacks;
+    }
+
+    static String key(String endpoint, String config, String id, String messageType, String priority) {
+        return endpoint + '/' + config + '/' + id + '/' + messageType + '/' + priority;
+    }
+}
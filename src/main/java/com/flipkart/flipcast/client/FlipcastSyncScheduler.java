@@ -0,0 +1,147 @@
+/*
+ * Copyright 2016 Phaneesh Nagaraja <phaneesh.n@gmail.com>.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package com.flipkart.flipcast.client;
+
+import android.app.AlarmManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.os.SystemClock;
+
+import com.flipkart.flipcast.data.CacheUtils;
+
+/**
+ * Schedules background {@link Flipcast#sync(String, String, FlipcastSyncCallback)} runs of a device. Every run
+ * schedules the next one, with an interval adapted by {@link FlipcastPollPolicy}, so quiet devices poll rarely while
+ * busy ones poll often. The settings and the current interval are kept in {@link CacheUtils}, so the schedule can be
+ * restored by {@link FlipcastPollReceiver} after the device reboots.
+ * <p></p>
+ * Polls use non-wakeup alarms on purpose: a poll falling due while the device sleeps is delivered when the device next
+ * wakes up, so polling never wakes the device on its own. Use {@link #onPushHint()} for messages which cannot wait.
+ * <p></p>
+ * The {@link android.app.Application} of the app has to implement {@link FlipcastClientProvider}.
+ *
+ * @author phaneesh
+ */
+public class FlipcastSyncScheduler {
+
+    static final String ACTION_POLL = "com.flipkart.flipcast.action.POLL";
+
+    private static final String TAG_SEPARATOR = "|";
+
+    private final Context context;
+
+    private final CacheUtils cacheUtils;
+
+    public FlipcastSyncScheduler(Context context) {
+        this.context = context.getApplicationContext();
+        this.cacheUtils = new CacheUtils(this.context);
+    }
+
+    /**
+     * Start syncing the messages of a device in the background. Replaces any previously scheduled sync.
+     *
+     * @param config
+     * @param id
+     * @param interval          initial interval between syncs in milliseconds
+     * @param persistAcrossBoot whether the sync has to be scheduled again after the device reboots
+     */
+    public void start(String config, String id, long interval, boolean persistAcrossBoot) {
+        if (interval <= 0) {
+            throw new IllegalArgumentException("Poll interval must be positive");
+        }
+        cacheUtils.setPollExecutorTag(config + TAG_SEPARATOR + id);
+        cacheUtils.setPollInterval(interval);
+        cacheUtils.setBootPersistPreference(persistAcrossBoot);
+        schedule(interval);
+    }
+
+    /**
+     * Stop syncing in the background
+     */
+    public void stop() {
+        alarmManager().cancel(pollIntent());
+        cacheUtils.clearPollSettings();
+    }
+
+    /**
+     * To be called when a push message arrives on the registered cloud messaging id hinting that new messages are
+     * available. Syncs right away instead of waiting for the current interval to elapse.
+     */
+    public void onPushHint() {
+        if (cacheUtils.getPollExecutorTag() != null) {
+            schedule(0);
+        }
+    }
+
+    /**
+     * Schedule the alarm again using the persisted settings. Used after the device reboots.
+     */
+    void restore() {
+        long interval = cacheUtils.getPollInterval();
+        if (interval > 0 && cacheUtils.getPollExecutorTag() != null && cacheUtils.getBootPersistPreference()) {
+            schedule(interval);
+        }
+    }
+
+    /**
+     * Save the interval until the next sync and schedule it
+     *
+     * @param interval
+     */
+    void reschedule(long interval) {
+        if (cacheUtils.getPollExecutorTag() == null) {
+            //Stopped while the sync was running
+            return;
+        }
+        cacheUtils.setPollInterval(interval);
+        schedule(interval);
+    }
+
+    long interval() {
+        return cacheUtils.getPollInterval();
+    }
+
+    /**
+     * @return config and device id of the scheduled sync or null if no sync is scheduled
+     */
+    String[] target() {
+        String tag = cacheUtils.getPollExecutorTag();
+        if (tag == null) {
+            return null;
+        }
+        int separator = tag.indexOf(TAG_SEPARATOR);
+        if (separator < 0) {
+            return null;
+        }
+        return new String[]{tag.substring(0, separator), tag.substring(separator + 1)};
+    }
+
+    private void schedule(long interval) {
+        //Replaces the pending alarm, if any, since the intent is the same. Non-wakeup; see the class documentation
+        alarmManager().set(AlarmManager.ELAPSED_REALTIME, SystemClock.elapsedRealtime() + interval, pollIntent());
+    }
+
+    private PendingIntent pollIntent() {
+        Intent intent = new Intent(context, FlipcastPollReceiver.class).setAction(ACTION_POLL);
+        return PendingIntent.getBroadcast(context, 0, intent, PendingIntent.FLAG_UPDATE_CURRENT);
+    }
+
+    private AlarmManager alarmManager() {
+        return (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+    }
+}
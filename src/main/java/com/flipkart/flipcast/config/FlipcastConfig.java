@@ -40,8 +40,46 @@ public class FlipcastConfig {
 
     private int requestTimeout = 5000;
 
+    private int ackBatchSize = 1;
+
+    private int ackBatchWindow = 500;
+
+    private boolean conditionalFetch;
+
+    private int maxIdleConnections = 1;
+
+    private long keepAliveDuration = 3000000;
+
+    private boolean http2;
+
+    private boolean preWarm;
+
+    private long countCacheTtl;
+
+    private boolean localCount;
+
+    private int maxRetries;
+
+    private long retryBaseDelay = 500;
+
+    private long retryMaxDelay = 30000;
+
+    private int circuitBreakerThreshold;
+
+    private long circuitBreakerOpenDuration = 30000;
+
+    private long registrationMaxAge;
+
+    private long pollMinInterval = 60000;
+
+    private long pollMaxInterval = 3600000;
+
     @Builder
-    public FlipcastConfig(String host, int port, String endpoint, boolean secured, int connectionTimeout, int requestTimeout) {
+    public FlipcastConfig(String host, int port, String endpoint, boolean secured, int connectionTimeout, int requestTimeout, int ackBatchSize,
+                          int ackBatchWindow, boolean conditionalFetch, int maxIdleConnections, long keepAliveDuration, boolean http2, boolean
+                                  preWarm, long countCacheTtl, boolean localCount, int maxRetries, long retryBaseDelay, long retryMaxDelay, int
+                                  circuitBreakerThreshold, long circuitBreakerOpenDuration, long registrationMaxAge, long pollMinInterval, long
+                                  pollMaxInterval) {
         this.host = host;
         if(port == 0) {
             if(secured) {
@@ -64,5 +102,58 @@ public class FlipcastConfig {
         } else {
             this.requestTimeout = requestTimeout;
         }
+        if(ackBatchSize == 0) {
+            this.ackBatchSize = 1;
+        } else {
+            this.ackBatchSize = ackBatchSize;
+        }
+        if(ackBatchWindow == 0) {
+            this.ackBatchWindow = 500;
+        } else {
+            this.ackBatchWindow = ackBatchWindow;
+        }
+        this.conditionalFetch = conditionalFetch;
+        if(maxIdleConnections == 0) {
+            this.maxIdleConnections = 1;
+        } else {
+            this.maxIdleConnections = maxIdleConnections;
+        }
+        if(keepAliveDuration == 0) {
+            this.keepAliveDuration = 3000000;
+        } else {
+            this.keepAliveDuration = keepAliveDuration;
+        }
+        this.http2 = http2;
+        this.preWarm = preWarm;
+        this.countCacheTtl = countCacheTtl;
+        this.localCount = localCount;
+        this.maxRetries = maxRetries;
+        if(retryBaseDelay == 0) {
+            this.retryBaseDelay = 500;
+        } else {
+            this.retryBaseDelay = retryBaseDelay;
+        }
+        if(retryMaxDelay == 0) {
+            this.retryMaxDelay = 30000;
+        } else {
+            this.retryMaxDelay = retryMaxDelay;
+        }
+        this.circuitBreakerThreshold = circuitBreakerThreshold;
+        if(circuitBreakerOpenDuration == 0) {
+            this.circuitBreakerOpenDuration = 30000;
+        } else {
+            this.circuitBreakerOpenDuration = circuitBreakerOpenDuration;
+        }
+        this.registrationMaxAge = registrationMaxAge;
+        if(pollMinInterval == 0) {
+            this.pollMinInterval = 60000;
+        } else {
+            this.pollMinInterval = pollMinInterval;
+        }
+        if(pollMaxInterval == 0) {
+            this.pollMaxInterval = 3600000;
+        } else {
+            this.pollMaxInterval = pollMaxInterval;
+        }
     }
 }
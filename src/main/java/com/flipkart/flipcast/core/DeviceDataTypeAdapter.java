@@ -0,0 +1,99 @@
+/*
+ * Copyright 2016 Phaneesh Nagaraja <phaneesh.n@gmail.com>.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package com.flipkart.flipcast.core;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+
+import static com.flipkart.flipcast.core.FlipcastTypeAdapterFactory.readString;
+
+/**
+ * Streaming {@link TypeAdapter} for {@link DeviceData}
+ *
+ * @author phaneesh
+ */
+public class DeviceDataTypeAdapter extends TypeAdapter<DeviceData> {
+
+    @Override
+    public void write(JsonWriter out, DeviceData value) throws IOException {
+        if (value == null) {
+            out.nullValue();
+            return;
+        }
+        out.beginObject();
+        out.name("configName").value(value.getConfigName());
+        out.name("deviceId").value(value.getDeviceId());
+        out.name("cloudMessagingId").value(value.getCloudMessagingId());
+        out.name("osName").value(value.getOsName());
+        out.name("osVersion").value(value.getOsVersion());
+        out.name("brand").value(value.getBrand());
+        out.name("model").value(value.getModel());
+        out.name("appName").value(value.getAppName());
+        out.name("appVersion").value(value.getAppVersion());
+        out.endObject();
+    }
+
+    @Override
+    public DeviceData read(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        DeviceData data = DeviceData.builder().build();
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "configName":
+                    data.setConfigName(readString(in));
+                    break;
+                case "deviceId":
+                    data.setDeviceId(readString(in));
+                    break;
+                case "cloudMessagingId":
+                    data.setCloudMessagingId(readString(in));
+                    break;
+                case "osName":
+                    data.setOsName(readString(in));
+                    break;
+                case "osVersion":
+                    data.setOsVersion(readString(in));
+                    break;
+                case "brand":
+                    data.setBrand(readString(in));
+                    break;
+                case "model":
+                    data.setModel(readString(in));
+                    break;
+                case "appName":
+                    data.setAppName(readString(in));
+                    break;
+                case "appVersion":
+                    data.setAppVersion(readString(in));
+                    break;
+                default:
+                    in.skipValue();
+            }
+        }
+        in.endObject();
+        return data;
+    }
+}
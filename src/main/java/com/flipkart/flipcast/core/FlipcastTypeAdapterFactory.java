@@ -0,0 +1,74 @@
+/*
+ * Copyright 2016 Phaneesh Nagaraja <phaneesh.n@gmail.com>.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package com.flipkart.flipcast.core;
+
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
+
+/**
+ * Provides streaming {@link TypeAdapter}s for the flipcast models so that (de)serialization does not go through
+ * reflection. Register with {@link com.google.gson.GsonBuilder#registerTypeAdapterFactory(TypeAdapterFactory)}.
+ *
+ * @author phaneesh
+ */
+public class FlipcastTypeAdapterFactory implements TypeAdapterFactory {
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
+        Class<? super T> rawType = type.getRawType();
+        if (rawType == InAppMessage.class) {
+            return (TypeAdapter<T>) new InAppMessageTypeAdapter();
+        }
+        if (rawType == MessagesResponse.class) {
+            return (TypeAdapter<T>) new MessagesResponseTypeAdapter();
+        }
+        if (rawType == MessageCountResponse.class) {
+            return (TypeAdapter<T>) new MessageCountResponseTypeAdapter();
+        }
+        if (rawType == MessageAckResponse.class) {
+            return (TypeAdapter<T>) new MessageAckResponseTypeAdapter();
+        }
+        if (rawType == DeviceData.class) {
+            return (TypeAdapter<T>) new DeviceDataTypeAdapter();
+        }
+        return null;
+    }
+
+    static String readString(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        return in.nextString();
+    }
+
+    static long readLong(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return 0;
+        }
+        return in.nextLong();
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2016 Phaneesh Nagaraja <phaneesh.n@gmail.com>.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package com.flipkart.flipcast.core;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.flipkart.flipcast.core.FlipcastTypeAdapterFactory.readLong;
+import static com.flipkart.flipcast.core.FlipcastTypeAdapterFactory.readString;
+
+/**
+ * Streaming {@link TypeAdapter} for {@link InAppMessage}
+ *
+ * @author phaneesh
+ */
+public class InAppMessageTypeAdapter extends TypeAdapter<InAppMessage> {
+
+    @Override
+    public void write(JsonWriter out, InAppMessage value) throws IOException {
+        if (value == null) {
+            out.nullValue();
+            return;
+        }
+        out.beginObject();
+        out.name("id").value(value.getId());
+        out.name("configName").value(value.getConfigName());
+        out.name("priority").value(value.getPriority());
+        out.name("deviceId").value(value.getDeviceId());
+        out.name("messageType").value(value.getMessageType());
+        out.name("message").value(value.getMessage());
+        if (value.getTags() != null) {
+            out.name("tags").beginArray();
+            for (String tag : value.getTags()) {
+                out.value(tag);
+            }
+            out.endArray();
+        }
+        out.name("ttl").value(value.getTtl());
+        out.name("status").value(value.getStatus());
+        out.name("created").value(value.getCreated());
+        out.endObject();
+    }
+
+    @Override
+    public InAppMessage read(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        InAppMessage message = new InAppMessage();
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "id":
+                    message.setId(readString(in));
+                    break;
+                case "configName":
+                    message.setConfigName(readString(in));
+                    break;
+                case "priority":
+                    message.setPriority(readString(in));
+                    break;
+                case "deviceId":
+                    message.setDeviceId(readString(in));
+                    break;
+                case "messageType":
+                    message.setMessageType(readString(in));
+                    break;
+                case "message":
+                    message.setMessage(readString(in));
+                    break;
+                case "tags":
+                    message.setTags(readTags(in));
+                    break;
+                case "ttl":
+                    message.setTtl(readLong(in));
+                    break;
+                case "status":
+                    message.setStatus(readString(in));
+                    break;
+                case "created":
+                    message.setCreated(readLong(in));
+                    break;
+                default:
+                    in.skipValue();
+            }
+        }
+        in.endObject();
+        return message;
+    }
+
+    private static List<String> readTags(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        List<String> tags = new ArrayList<>(4);
+        in.beginArray();
+        while (in.hasNext()) {
+            tags.add(readString(in));
+        }
+        in.endArray();
+        return tags;
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2016 Phaneesh Nagaraja <phaneesh.n@gmail.com>.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package com.flipkart.flipcast.core;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+
+import static com.flipkart.flipcast.core.FlipcastTypeAdapterFactory.readString;
+
+/**
+ * Streaming {@link TypeAdapter} for {@link MessageAckResponse}
+ *
+ * @author phaneesh
+ */
+public class MessageAckResponseTypeAdapter extends TypeAdapter<MessageAckResponse> {
+
+    @Override
+    public void write(JsonWriter out, MessageAckResponse value) throws IOException {
+        if (value == null) {
+            out.nullValue();
+            return;
+        }
+        out.beginObject();
+        out.name("messageId").value(value.getMessageId());
+        out.endObject();
+    }
+
+    @Override
+    public MessageAckResponse read(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        MessageAckResponse response = new MessageAckResponse();
+        in.beginObject();
+        while (in.hasNext()) {
+            if ("messageId".equals(in.nextName())) {
+                response.setMessageId(readString(in));
+            } else {
+                in.skipValue();
+            }
+        }
+        in.endObject();
+        return response;
+    }
+}
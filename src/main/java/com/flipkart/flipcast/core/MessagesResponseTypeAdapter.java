@@ -0,0 +1,95 @@
+/*
+ * Copyright 2016 Phaneesh Nagaraja <phaneesh.n@gmail.com>.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package com.flipkart.flipcast.core;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.flipkart.flipcast.core.FlipcastTypeAdapterFactory.readLong;
+
+/**
+ * Streaming {@link TypeAdapter} for {@link MessagesResponse}
+ *
+ * @author phaneesh
+ */
+public class MessagesResponseTypeAdapter extends TypeAdapter<MessagesResponse> {
+
+    private final InAppMessageTypeAdapter messageAdapter = new InAppMessageTypeAdapter();
+
+    @Override
+    public void write(JsonWriter out, MessagesResponse value) throws IOException {
+        if (value == null) {
+            out.nullValue();
+            return;
+        }
+        out.beginObject();
+        out.name("count").value(value.getCount());
+        if (value.getMessages() != null) {
+            out.name("messages").beginArray();
+            for (InAppMessage message : value.getMessages()) {
+                messageAdapter.write(out, message);
+            }
+            out.endArray();
+        }
+        out.endObject();
+    }
+
+    @Override
+    public MessagesResponse read(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        MessagesResponse response = new MessagesResponse();
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "count":
+                    response.setCount(readLong(in));
+                    break;
+                case "messages":
+                    response.setMessages(readMessages(in));
+                    break;
+                default:
+                    in.skipValue();
+            }
+        }
+        in.endObject();
+        return response;
+    }
+
+    private List<InAppMessage> readMessages(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        List<InAppMessage> messages = new ArrayList<>();
+        in.beginArray();
+        while (in.hasNext()) {
+            messages.add(messageAdapter.read(in));
+        }
+        in.endArray();
+        return messages;
+    }
+}
@@ -38,9 +38,14 @@ public class CacheUtils {
      * Keys
      */
     private static String sCacheLimit = "key_cache_limit";
+    private static String sCacheByteLimit = "key_cache_byte_limit";
+    private static String sCompressionThreshold = "key_compression_threshold";
     private static String sPollInterval = "key_poll_interval";
     private static String sBootPersistPreference = "key_boot_persist_pref";
     private static String sPollExecutorTag = "key_poll_exec_tag";
+    private static String sHighWaterMark = "key_high_water_mark";
+    private static String sRegistrationFingerprint = "key_registration_fingerprint";
+    private static String sRegistrationTime = "key_registration_time";
 
     public CacheUtils(Context context) {
         mSharedPreferences = PreferenceManager.getDefaultSharedPreferences(context);
@@ -70,6 +75,189 @@ public class CacheUtils {
         return mSharedPreferences.getInt(sCacheLimit, -1);
     }
 
+    /**
+     * The local cache of {@linkplain com.flipkart.flipcast.core.InAppMessage} objects can also be limited by the total
+     * size (in bytes) of the messages, which can be set using this function. Oldest messages are evicted first.
+     *
+     * @param limit
+     */
+    public void setInAppCacheByteLimit(long limit) {
+        mSharedPreferences.edit().putLong(sCacheByteLimit, limit).apply();
+    }
+
+    /**
+     * Returns the limit on the total size (in bytes) of the cached messages, or -1 if there is no limit.
+     */
+    public long getInAppCacheByteLimit() {
+        return mSharedPreferences.getLong(sCacheByteLimit, -1);
+    }
+
+    /**
+     * Message bodies longer than this (in characters) are stored compressed in the local cache. Compression applies to
+     * the messages written after it is set.
+     *
+     * @param threshold
+     */
+    public void setInAppCompressionThreshold(int threshold) {
+        mSharedPreferences.edit().putInt(sCompressionThreshold, threshold).apply();
+    }
+
+    /**
+     * Returns the length above which message bodies are stored compressed, or -1 if bodies are never compressed.
+     */
+    public int getInAppCompressionThreshold() {
+        return mSharedPreferences.getInt(sCompressionThreshold, -1);
+    }
+
+    //*********************************************************************
+    // APIs : Sync Related
+    //*********************************************************************
+
+    /**
+     * Saves the creation time of the newest {@linkplain com.flipkart.flipcast.core.InAppMessage} synced for a device.
+     *
+     * @param configName
+     * @param deviceId
+     * @param created
+     */
+    public void setHighWaterMark(String configName, String deviceId, long created) {
+        mSharedPreferences.edit().putLong(getDeviceKey(sHighWaterMark, configName, deviceId), created).apply();
+    }
+
+    /**
+     * Returns the creation time of the newest {@linkplain com.flipkart.flipcast.core.InAppMessage} synced for a device,
+     * or 0 if the device was never synced.
+     *
+     * @param configName
+     * @param deviceId
+     */
+    public long getHighWaterMark(String configName, String deviceId) {
+        return mSharedPreferences.getLong(getDeviceKey(sHighWaterMark, configName, deviceId), 0);
+    }
+
+    //*********************************************************************
+    // APIs : Poll Related
+    //*********************************************************************
+
+    /**
+     * Saves the interval (in milliseconds) at which {@linkplain com.flipkart.flipcast.core.InAppMessage} objects are
+     * synced in the background.
+     *
+     * @param interval
+     */
+    public void setPollInterval(long interval) {
+        mSharedPreferences.edit().putLong(sPollInterval, interval).apply();
+    }
+
+    /**
+     * Returns the background sync interval in milliseconds, or -1 if background sync is not scheduled.
+     */
+    public long getPollInterval() {
+        return mSharedPreferences.getLong(sPollInterval, -1);
+    }
+
+    /**
+     * Saves whether the background sync has to be scheduled again after the device reboots.
+     *
+     * @param persist
+     */
+    public void setBootPersistPreference(boolean persist) {
+        mSharedPreferences.edit().putBoolean(sBootPersistPreference, persist).apply();
+    }
+
+    /**
+     * Returns whether the background sync has to be scheduled again after the device reboots.
+     */
+    public boolean getBootPersistPreference() {
+        return mSharedPreferences.getBoolean(sBootPersistPreference, false);
+    }
+
+    /**
+     * Saves the tag identifying the config and device which the background sync runs for.
+     *
+     * @param tag
+     */
+    public void setPollExecutorTag(String tag) {
+        mSharedPreferences.edit().putString(sPollExecutorTag, tag).apply();
+    }
+
+    /**
+     * Returns the tag identifying the config and device which the background sync runs for, or null if background sync
+     * is not scheduled.
+     */
+    public String getPollExecutorTag() {
+        return mSharedPreferences.getString(sPollExecutorTag, null);
+    }
+
+    /**
+     * Forget all the background sync settings
+     */
+    public void clearPollSettings() {
+        mSharedPreferences.edit()
+                .remove(sPollInterval)
+                .remove(sBootPersistPreference)
+                .remove(sPollExecutorTag)
+                .apply();
+    }
+
+    //*********************************************************************
+    // APIs : Registration Related
+    //*********************************************************************
+
+    /**
+     * Saves the fingerprint of the last successfully registered {@linkplain com.flipkart.flipcast.core.DeviceData} of a device
+     * along with the time of registration.
+     *
+     * @param configName
+     * @param deviceId
+     * @param fingerprint
+     * @param registeredAt
+     */
+    public void setRegistrationFingerprint(String configName, String deviceId, String fingerprint, long registeredAt) {
+        mSharedPreferences.edit()
+                .putString(getDeviceKey(sRegistrationFingerprint, configName, deviceId), fingerprint)
+                .putLong(getDeviceKey(sRegistrationTime, configName, deviceId), registeredAt)
+                .apply();
+    }
+
+    /**
+     * Returns the fingerprint of the last successfully registered {@linkplain com.flipkart.flipcast.core.DeviceData} of a
+     * device, or null if the device is not registered.
+     *
+     * @param configName
+     * @param deviceId
+     */
+    public String getRegistrationFingerprint(String configName, String deviceId) {
+        return mSharedPreferences.getString(getDeviceKey(sRegistrationFingerprint, configName, deviceId), null);
+    }
+
+    /**
+     * Returns the time of the last successful registration of a device, or 0 if the device is not registered.
+     *
+     * @param configName
+     * @param deviceId
+     */
+    public long getRegistrationTime(String configName, String deviceId) {
+        return mSharedPreferences.getLong(getDeviceKey(sRegistrationTime, configName, deviceId), 0);
+    }
+
+    /**
+     * Forget the registration of a device, so that the next registration is sent to the service.
+     *
+     * @param configName
+     * @param deviceId
+     */
+    public void clearRegistrationFingerprint(String configName, String deviceId) {
+        mSharedPreferences.edit()
+                .remove(getDeviceKey(sRegistrationFingerprint, configName, deviceId))
+                .remove(getDeviceKey(sRegistrationTime, configName, deviceId))
+                .apply();
+    }
+
+    private static String getDeviceKey(String key, String configName, String deviceId) {
+        return key + "_" + configName + "_" + deviceId;
+    }
+
     //*********************************************************************
     // End of class
     //*********************************************************************
@@ -58,6 +58,37 @@ public interface DataStoreContract {
      */
     Cursor query(String table, String[] columns, String selection, String[] selectionArgs, String groupBy, String having, String orderBy);
 
+    /**
+     * Query the given table, returning a {@link Cursor} over the result set.
+     *
+     * @param table         The table name to compile the query against.
+     * @param columns       A list of which columns to return. Passing null will
+     *                      return all columns.
+     * @param selection     A filter declaring which rows to return, formatted as an
+     *                      SQL WHERE clause (excluding the WHERE itself).
+     * @param selectionArgs Values for the ?s in selection.
+     * @param groupBy       SQL GROUP BY clause (excluding the GROUP BY itself).
+     * @param having        SQL HAVING clause (excluding the HAVING itself).
+     * @param orderBy       SQL ORDER BY clause (excluding the ORDER BY itself).
+     * @param limit         Limits the number of rows returned by the query,
+     *                      formatted as LIMIT clause. Passing null denotes no LIMIT clause.
+     * @return A {@link Cursor} object, which is positioned before the first entry.
+     * @see #query(String, String[], String, String[], String, String, String)
+     */
+    Cursor query(String table, String[] columns, String selection, String[] selectionArgs, String groupBy, String having, String orderBy, String
+            limit);
+
+    /**
+     * Runs the provided SQL and returns a {@link Cursor} over the result set. Meant for queries which cannot be
+     * expressed through {@link #query(String, String[], String, String[], String, String, String, String)}, like joins.
+     *
+     * @param sql           the SQL query. The SQL string must not be ; terminated
+     * @param selectionArgs You may include ?s in where clause in the query,
+     *                      which will be replaced by the values from selectionArgs.
+     * @return A {@link Cursor} object, which is positioned before the first entry.
+     */
+    Cursor rawQuery(String sql, String[] selectionArgs);
+
     /**
      * Convenience method for updating rows in the database.
      *
@@ -124,4 +155,15 @@ public interface DataStoreContract {
      * whereClause.
      */
     int delete(String tableName, String selectionCriteria, String[] selectionArgs);
+
+    /**
+     * Delete rows that are no longer visible to readers, e.g. expired messages. Unlike
+     * {@link #delete(String, String, String[])} the in-memory cache is left as is, since it never serves such rows.
+     *
+     * @param tableName         the table to delete from
+     * @param selectionCriteria the WHERE clause selecting the invisible rows
+     * @param selectionArgs     arguments of the WHERE clause
+     * @return the number of rows deleted
+     */
+    int purge(String tableName, String selectionCriteria, String[] selectionArgs);
 }
@@ -18,17 +18,27 @@
 package com.flipkart.flipcast.data;
 
 import android.content.ContentProvider;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentValues;
 import android.content.Context;
+import android.content.OperationApplicationException;
 import android.content.UriMatcher;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.net.Uri;
+import android.provider.BaseColumns;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
+import android.text.TextUtils;
 import android.util.Log;
 
 import com.flipkart.flipcast.core.InAppMessage;
+import com.flipkart.flipcast.log.FlipcastLog;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 
 /**
@@ -48,7 +58,15 @@ public class FlipcastDataProvider extends ContentProvider {
     public final String DEFAULT_AUTHORITY;
     public static final String PATH = "inAppMessages";
     public static final String PATH_ID = "id";
+    public static final String PATH_TAG = "tag";
+    public static final String PATH_SEARCH = "search";
     public static final String QUERY_PARAM_ID = "id";
+    public static final String QUERY_PARAM_LIMIT = "limit";
+    public static final String QUERY_PARAM_OFFSET = "offset";
+    public static final String QUERY_PARAM_BEFORE = "before";
+    public static final String QUERY_PARAM_BEFORE_ROW = "before_row";
+    public static final String QUERY_PARAM_TAG = "tag";
+    public static final String QUERY_PARAM_SEARCH = "q";
 
     final String URL;
     public final Uri CONTENT_URI;
@@ -56,20 +74,25 @@ public class FlipcastDataProvider extends ContentProvider {
     private FlipcastDataStore mFlipcastDataStore;
     private Context mContext;
     private CacheUtils mCacheUtils;
+    private final ThreadLocal<Boolean> mApplyingBatch = new ThreadLocal<>();
 
     private static final int CODE_ALL_MESSAGES = 1000;
     private static final int CODE_SINGLE_MESSAGE = 1001;
+    private static final int CODE_TAGGED_MESSAGES = 1002;
+    private static final int CODE_SEARCH_MESSAGES = 1003;
 
     public FlipcastDataProvider(@NonNull Context context, String authority) {
         DEFAULT_AUTHORITY = authority;
         mContext = context;
         URL = SCHEME + "://" + DEFAULT_AUTHORITY + "/" + PATH;
         mUriMatcher = new UriMatcher(UriMatcher.NO_MATCH);
-        mFlipcastDataStore = new FlipcastDataStore(context);
+        mFlipcastDataStore = FlipcastDataStore.getInstance(context);
         mCacheUtils = new CacheUtils(context);
         CONTENT_URI = Uri.parse(URL);
         mUriMatcher.addURI(DEFAULT_AUTHORITY, PATH, CODE_ALL_MESSAGES);
         mUriMatcher.addURI(DEFAULT_AUTHORITY, PATH + "/" + PATH_ID, CODE_SINGLE_MESSAGE);
+        mUriMatcher.addURI(DEFAULT_AUTHORITY, PATH + "/" + PATH_TAG, CODE_TAGGED_MESSAGES);
+        mUriMatcher.addURI(DEFAULT_AUTHORITY, PATH + "/" + PATH_SEARCH, CODE_SEARCH_MESSAGES);
     }
 
     @Override
@@ -86,6 +109,8 @@ public class FlipcastDataProvider extends ContentProvider {
     public String getType(@NonNull Uri uri) {
         switch (mUriMatcher.match(uri)) {
             case CODE_ALL_MESSAGES:
+            case CODE_TAGGED_MESSAGES:
+            case CODE_SEARCH_MESSAGES:
                 return "vnd.android.cursor.dir/vnd.flipcast.inAppMessage";
 
             case CODE_SINGLE_MESSAGE:
@@ -101,10 +126,16 @@ public class FlipcastDataProvider extends ContentProvider {
     public Cursor query(@NonNull Uri uri, String[] projection, String selection, String[] selectionArgs, String sortOrder) {
         switch (mUriMatcher.match(uri)) {
             case CODE_ALL_MESSAGES:
-                return fetchAllInAppMessages();
+                return fetchInAppMessages(uri, projection, selection, selectionArgs, sortOrder);
 
             case CODE_SINGLE_MESSAGE:
-                return fetchSingleInAppMessage(uri);
+                return fetchSingleInAppMessage(uri, projection);
+
+            case CODE_TAGGED_MESSAGES:
+                return fetchTaggedInAppMessages(uri, projection, selection, selectionArgs, sortOrder);
+
+            case CODE_SEARCH_MESSAGES:
+                return searchInAppMessages(uri, projection, selection, selectionArgs);
         }
         return null;
     }
@@ -119,6 +150,37 @@ public class FlipcastDataProvider extends ContentProvider {
         return null;
     }
 
+    @Override
+    public int bulkInsert(@NonNull Uri uri, @NonNull ContentValues[] values) {
+        switch (mUriMatcher.match(uri)) {
+            case CODE_ALL_MESSAGES:
+                return bulkInsertInAppMessages(uri, values);
+        }
+        return 0;
+    }
+
+    /**
+     * Applies all the operations in a single transaction. The cache is trimmed and observers are notified only once
+     * for the whole batch.
+     */
+    @NonNull
+    @Override
+    public ContentProviderResult[] applyBatch(@NonNull ArrayList<ContentProviderOperation> operations) throws OperationApplicationException {
+        ContentProviderResult[] results;
+        mApplyingBatch.set(Boolean.TRUE);
+        mFlipcastDataStore.startTransaction();
+        try {
+            results = super.applyBatch(operations);
+            trimToCacheLimit();
+            mFlipcastDataStore.setTransactionSuccessful();
+        } finally {
+            mFlipcastDataStore.endTransaction();
+            mApplyingBatch.remove();
+        }
+        notifyChange(CONTENT_URI);
+        return results;
+    }
+
     @Override
     public int delete(@NonNull Uri uri, String s, String[] strings) {
         switch (mUriMatcher.match(uri)) {
@@ -136,35 +198,259 @@ public class FlipcastDataProvider extends ContentProvider {
         return handleUpdateOperation(uri, contentValues, where, whereArgs);
     }
 
+    //*********************************************************************
+    // APIs
+    //*********************************************************************
+
+    /**
+     * Keep decoded {@linkplain InAppMessage} objects in memory so that repeated reads through
+     * {@link #getInAppMessage(String)} and {@link #getInAppMessages(String, String)} do not touch the database.
+     * The cache is kept in sync with all the writes to the cache table.
+     *
+     * @param maxBytes approximate memory budget of the cache
+     */
+    public void enableMemoryCache(int maxBytes) {
+        mFlipcastDataStore.enableMemoryCache(maxBytes);
+    }
+
+    /**
+     * Returns the cached {@linkplain InAppMessage} with matching id, unless it has expired. Served from memory when the
+     * memory cache is enabled.
+     *
+     * @param id message id
+     * @return message or null if not found
+     */
+    @Nullable
+    public InAppMessage getInAppMessage(String id) {
+        long now = System.currentTimeMillis();
+        InAppMessageMemoryCache memoryCache = mFlipcastDataStore.getMemoryCache();
+        long generation = 0;
+        if (memoryCache != null) {
+            InAppMessage message = memoryCache.get(id, now);
+            if (message != null) {
+                return message;
+            }
+            generation = memoryCache.generation();
+        }
+        InAppMessage message = null;
+        Cursor cursor = mFlipcastDataStore.query(TableInAppMessages.NAME, null, TableInAppMessages.COLUMN_ID + "=? AND " + TableInAppMessages
+                .SELECTION_NOT_EXPIRED, new String[]{id, Long.toString(now)}, null, null, null);
+        try {
+            if (cursor.moveToFirst()) {
+                message = TableInAppMessages.readSingleInAppMessageFromCursor(cursor);
+            }
+        } finally {
+            cursor.close();
+        }
+        if (memoryCache != null && message != null) {
+            memoryCache.put(message, generation);
+        }
+        return message;
+    }
+
+    /**
+     * Returns cached {@linkplain InAppMessage} objects of the given message type and priority that have not expired,
+     * newest first. Served from memory when the memory cache is enabled.
+     *
+     * @param messageType message type or null for all types
+     * @param priority    priority or null for all priorities
+     * @return unmodifiable list of messages
+     */
+    @NonNull
+    public List<InAppMessage> getInAppMessages(String messageType, String priority) {
+        long now = System.currentTimeMillis();
+        InAppMessageMemoryCache memoryCache = mFlipcastDataStore.getMemoryCache();
+        long generation = 0;
+        if (memoryCache != null) {
+            List<InAppMessage> messages = memoryCache.getList(messageType, priority, now);
+            if (messages != null) {
+                return messages;
+            }
+            generation = memoryCache.generation();
+        }
+        String selection = TableInAppMessages.SELECTION_NOT_EXPIRED;
+        String[] selectionArgs = new String[]{Long.toString(now)};
+        if (messageType != null) {
+            selection = appendSelection(selection, TableInAppMessages.COLUMN_MESSAGE_TYPE + "=?");
+            selectionArgs = appendSelectionArgs(selectionArgs, messageType);
+        }
+        if (priority != null) {
+            selection = appendSelection(selection, TableInAppMessages.COLUMN_PRIORITY + "=?");
+            selectionArgs = appendSelectionArgs(selectionArgs, priority);
+        }
+        List<InAppMessage> messages = new ArrayList<>();
+        Cursor cursor = mFlipcastDataStore.query(TableInAppMessages.NAME, null, selection, selectionArgs, null, null, TableInAppMessages
+                .ORDER_NEWEST_FIRST);
+        try {
+            while (cursor.moveToNext()) {
+                messages.add(TableInAppMessages.readSingleInAppMessageFromCursor(cursor));
+            }
+        } finally {
+            cursor.close();
+        }
+        messages = Collections.unmodifiableList(messages);
+        if (memoryCache != null) {
+            memoryCache.putList(messageType, priority, messages, generation);
+        }
+        return messages;
+    }
+
+    /**
+     * Delete the expired {@linkplain InAppMessage} objects from the cache. The purge is done in small chunks and bounded
+     * in time, so it can be called periodically (the background sync does so) without blocking readers.
+     *
+     * @return number of messages deleted
+     */
+    public int purgeExpiredInAppMessages() {
+        int deleteCount = TableInAppMessages.purgeExpired(mFlipcastDataStore, System.currentTimeMillis());
+        if (deleteCount > 0) {
+            notifyChange(CONTENT_URI);
+        }
+        return deleteCount;
+    }
+
     //*********************************************************************
     // Utility methods
     //*********************************************************************
 
     /**
-     * Returns cursor pointing to all cached {@linkplain InAppMessage} objects.
+     * Returns cursor pointing to cached {@linkplain InAppMessage} objects that have not expired. Projection, selection
+     * and sort order are pushed down to the data store. Supports paging through 'limit' & 'offset' or keyset paging
+     * through 'before' & 'before_row' query parameters (see {@link FlipcastUriGenerator}). Messages are ordered by
+     * (created, _id), so that messages created at the same time are neither skipped nor repeated across pages.
      *
+     * @param uri           Uri optionally carrying paging parameters
+     * @param projection    columns to be returned, null for all columns
+     * @param selection     selection criteria
+     * @param selectionArgs selection arguments
+     * @param sortOrder     sort order, defaults to newest first
      * @return Cursor
      */
-    private Cursor fetchAllInAppMessages() {
-        String orderBy = TableInAppMessages.COLUMN_CREATED + " DESC";
-        Cursor cursor = mFlipcastDataStore.query(TableInAppMessages.NAME, null, null, null, null, null, orderBy);
-        printInAppMessage(cursor);
+    private Cursor fetchInAppMessages(@NonNull Uri uri, String[] projection, String selection, String[] selectionArgs, String sortOrder) {
+        String orderBy = TextUtils.isEmpty(sortOrder) ? TableInAppMessages.ORDER_NEWEST_FIRST : sortOrder;
+        selection = appendSelection(selection, TableInAppMessages.SELECTION_NOT_EXPIRED);
+        selectionArgs = appendSelectionArgs(selectionArgs, Long.toString(System.currentTimeMillis()));
+        String before = uri.getQueryParameter(QUERY_PARAM_BEFORE);
+        String beforeRow = uri.getQueryParameter(QUERY_PARAM_BEFORE_ROW);
+        if (before != null && beforeRow != null) {
+            String created = Long.toString(parseNumber(before));
+            selection = appendSelection(selection, TableInAppMessages.SELECTION_BEFORE);
+            selectionArgs = appendSelectionArgs(appendSelectionArgs(appendSelectionArgs(selectionArgs, created), created), Long.toString
+                    (parseNumber(beforeRow)));
+        } else if (before != null) {
+            selection = appendSelection(selection, TableInAppMessages.COLUMN_CREATED + " < ?");
+            selectionArgs = appendSelectionArgs(selectionArgs, Long.toString(parseNumber(before)));
+        }
+        Cursor cursor = InAppMessageCursor.wrap(mFlipcastDataStore.query(TableInAppMessages.NAME, TableInAppMessages.withCodec(projection),
+                selection, selectionArgs, null, null, orderBy, getLimit(uri)));
+        if (projection == null && FlipcastLog.isLoggable(Log.VERBOSE)) {
+            printInAppMessage(cursor);
+        }
         return cursor;
     }
 
+    /**
+     * Returns cursor pointing to cached {@linkplain InAppMessage} objects carrying the tag in the 'tag' query parameter.
+     * The lookup goes through the tag index of {@link TableInAppMessageTags}. Supports the same paging as
+     * {@link #fetchInAppMessages(Uri, String[], String, String[], String)}.
+     *
+     * @param uri           Uri carrying 'tag' and optionally paging parameters
+     * @param projection    columns to be returned, null for all columns
+     * @param selection     selection criteria
+     * @param selectionArgs selection arguments
+     * @param sortOrder     sort order, defaults to newest first
+     * @return Cursor
+     */
+    private Cursor fetchTaggedInAppMessages(@NonNull Uri uri, String[] projection, String selection, String[] selectionArgs, String sortOrder) {
+        String tag = uri.getQueryParameter(QUERY_PARAM_TAG);
+        if (tag == null) {
+            throw new IllegalArgumentException("Missing tag parameter: " + uri);
+        }
+        return fetchInAppMessages(uri, projection, appendSelection(selection, TableInAppMessageTags.SELECTION_TAGGED), appendSelectionArgs
+                (selectionArgs, tag), sortOrder);
+    }
+
+    /**
+     * Returns cursor pointing to cached {@linkplain InAppMessage} objects matching the text in the 'q' query parameter,
+     * looked up through the full text index of {@link TableInAppMessagesSearch}. Results are ranked by number of
+     * matches, then newest first, and can be paged through 'limit' & 'offset' query parameters. Columns in the
+     * selection have to be qualified with the table name.
+     *
+     * @param uri           Uri carrying 'q' and optionally paging parameters
+     * @param projection    columns to be returned, null for all columns
+     * @param selection     selection criteria
+     * @param selectionArgs selection arguments
+     * @return Cursor
+     */
+    private Cursor searchInAppMessages(@NonNull Uri uri, String[] projection, String selection, String[] selectionArgs) {
+        String text = uri.getQueryParameter(QUERY_PARAM_SEARCH);
+        if (text == null) {
+            throw new IllegalArgumentException("Missing search parameter: " + uri);
+        }
+        return TableInAppMessagesSearch.search(mFlipcastDataStore, text, projection, selection, selectionArgs, getLimit(uri));
+    }
+
     /**
      * Returns cursor pointing to cached {@linkplain InAppMessage} pointed by URI with 'id' query parameter.
      *
-     * @param uri Uri carrying 'id' of the row
+     * @param uri        Uri carrying 'id' of the row
+     * @param projection columns to be returned, null for all columns
      * @return Cursor
      */
-    private Cursor fetchSingleInAppMessage(@NonNull Uri uri) {
+    private Cursor fetchSingleInAppMessage(@NonNull Uri uri, String[] projection) {
         String id = uri.getQueryParameter(QUERY_PARAM_ID);
         String table = TableInAppMessages.NAME;
-        String where = TableInAppMessages.COLUMN_ID + "=?";
-        String[] args = new String[]{id};
+        String where = TableInAppMessages.COLUMN_ID + "=? AND " + TableInAppMessages.SELECTION_NOT_EXPIRED;
+        String[] args = new String[]{id, Long.toString(System.currentTimeMillis())};
+
+        return InAppMessageCursor.wrap(mFlipcastDataStore.query(table, TableInAppMessages.withCodec(projection), where, args, null, null, null));
+    }
+
+
+    /**
+     * Builds the LIMIT clause from 'limit' & 'offset' query parameters
+     *
+     * @param uri Uri optionally carrying paging parameters
+     * @return limit clause or null if the uri does not ask for paging
+     */
+    private static String getLimit(@NonNull Uri uri) {
+        String limit = uri.getQueryParameter(QUERY_PARAM_LIMIT);
+        if (limit == null) {
+            return null;
+        }
+        String offset = uri.getQueryParameter(QUERY_PARAM_OFFSET);
+        if (offset == null) {
+            return Long.toString(parseNumber(limit));
+        }
+        return parseNumber(offset) + "," + parseNumber(limit);
+    }
+
+
+    private static long parseNumber(String value) {
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid paging parameter: " + value);
+        }
+    }
+
+
+    private static String appendSelection(String selection, String clause) {
+        if (TextUtils.isEmpty(selection)) {
+            return clause;
+        }
+        return "(" + selection + ") AND " + clause;
+    }
+
 
-        return mFlipcastDataStore.query(table, null, where, args, null, null, null);
+    private static String[] appendSelectionArgs(String[] selectionArgs, String arg) {
+        if (selectionArgs == null) {
+            return new String[]{arg};
+        }
+        String[] args = new String[selectionArgs.length + 1];
+        System.arraycopy(selectionArgs, 0, args, 0, selectionArgs.length);
+        args[selectionArgs.length] = arg;
+        return args;
     }
 
 
@@ -176,13 +462,17 @@ public class FlipcastDataProvider extends ContentProvider {
      * @return Uri carrying inserted row information
      */
     private Uri insertInAppMessage(Uri uri, ContentValues contentValues) {
-        long rowId = mFlipcastDataStore.insertWithOnConflict(TableInAppMessages.NAME, null, contentValues, SQLiteDatabase.CONFLICT_REPLACE);
-        if (mCacheUtils.getInAppCacheLimit() != -1) {
-            trimTableToRows(mCacheUtils.getInAppCacheLimit());
+        long rowId;
+        mFlipcastDataStore.startTransaction();
+        try {
+            rowId = insertWithTags(contentValues);
+            mFlipcastDataStore.setTransactionSuccessful();
+        } finally {
+            mFlipcastDataStore.endTransaction();
         }
-
-        if (mContext != null) {
-            mContext.getContentResolver().notifyChange(uri, null);
+        if (!isApplyingBatch()) {
+            trimToCacheLimit();
+            notifyChange(uri);
         }
 
         //Log.i(TAG, "Inserted at row with id=" + rowId);
@@ -190,6 +480,57 @@ public class FlipcastDataProvider extends ContentProvider {
     }
 
 
+    /**
+     * Insert multiple {@linkplain InAppMessage} into the cache in a single transaction. The cache is trimmed and observers
+     * are notified only once for the whole batch.
+     *
+     * @param uri    Uri pointing all InAppMessages
+     * @param values CVs holding necessary values
+     * @return number of rows inserted
+     */
+    private int bulkInsertInAppMessages(Uri uri, ContentValues[] values) {
+        int count = 0;
+        mFlipcastDataStore.startTransaction();
+        try {
+            for (ContentValues contentValues : values) {
+                if (insertWithTags(contentValues) != -1) {
+                    count++;
+                }
+            }
+            trimToCacheLimit();
+            mFlipcastDataStore.setTransactionSuccessful();
+        } finally {
+            mFlipcastDataStore.endTransaction();
+        }
+        notifyChange(uri);
+        return count;
+    }
+
+
+    /**
+     * Insert or replace a message along with its tags. Large bodies are compressed, in which case the search index is
+     * written here as the triggers index only plain bodies. The caller is expected to hold a transaction.
+     *
+     * @param values CV holding necessary values; left as is, the encoded row is written from a copy
+     * @return row id of the message or -1 on failure
+     */
+    private long insertWithTags(ContentValues values) {
+        ContentValues contentValues = new ContentValues(values);
+        TableInAppMessages.putExpiresAt(contentValues);
+        String message = contentValues.getAsString(TableInAppMessages.COLUMN_MESSAGE);
+        boolean compressed = TableInAppMessages.encodeMessage(contentValues, mFlipcastDataStore.getCompressionThreshold());
+        long rowId = mFlipcastDataStore.insertWithOnConflict(TableInAppMessages.NAME, null, contentValues, SQLiteDatabase.CONFLICT_REPLACE);
+        if (rowId != -1) {
+            String tags = contentValues.getAsString(TableInAppMessages.COLUMN_TAGS);
+            TableInAppMessageTags.write(mFlipcastDataStore, contentValues.getAsString(TableInAppMessages.COLUMN_ID), tags);
+            if (compressed) {
+                TableInAppMessagesSearch.write(mFlipcastDataStore, rowId, message, tags);
+            }
+        }
+        return rowId;
+    }
+
+
     /**
      * Helper to clear all cached {@linkplain InAppMessage}
      *
@@ -197,40 +538,51 @@ public class FlipcastDataProvider extends ContentProvider {
      */
     private int clearAllInAppMessages() {
         int deleteCount = mFlipcastDataStore.delete(TableInAppMessages.NAME, null, null);
-        Log.i(TAG, "Deleted " + deleteCount + " rows");
+        if (FlipcastLog.isLoggable(Log.DEBUG)) {
+            FlipcastLog.d(TAG, "Deleted " + deleteCount + " rows");
+        }
         return deleteCount;
     }
 
 
     /**
-     * Prints list of {@linkplain InAppMessage} objects pointed by the cursor
+     * Prints list of {@linkplain InAppMessage} objects pointed by the cursor. This walks the whole cursor, so it is used
+     * only when verbose logging is enabled.
      *
      * @param tempCursor cursor
      */
     private void printInAppMessage(Cursor tempCursor) {
         if (tempCursor != null) {
-            tempCursor.moveToFirst();
-            while (!tempCursor.isAfterLast()) {
+            while (tempCursor.moveToNext()) {
                 InAppMessage message = TableInAppMessages.readSingleInAppMessageFromCursor(tempCursor);
-                Log.i(TAG, message.toString());
-                tempCursor.moveToNext();
+                FlipcastLog.v(TAG, message.toString());
             }
+            tempCursor.moveToPosition(-1);
         }
     }
 
 
     /**
-     * Helper to trim the row count to specified input
-     *
-     * @param count Number of rows that the table to be trimmed
+     * Helper to trim the table to the cache limits, if set
      */
-    private void trimTableToRows(int count) {
-        String table = TableInAppMessages.NAME;
-        String innerSelect = "select " + TableInAppMessages.COLUMN_ID + " from " + table + " order by " + TableInAppMessages.COLUMN_CREATED + " desc limit ?";
-        String where = TableInAppMessages.COLUMN_ID + " not in ( " + innerSelect + " )";
-        String[] args = new String[]{Integer.toString(count)};
-        int deleteCount = mFlipcastDataStore.delete(TableInAppMessages.NAME, where, args);
-        Log.i(TAG, "Trimmed the table. Deleted " + deleteCount + " rows.");
+    private void trimToCacheLimit() {
+        int limit = mCacheUtils.getInAppCacheLimit();
+        long byteLimit = mCacheUtils.getInAppCacheByteLimit();
+        if (limit != -1 || byteLimit != -1) {
+            TableInAppMessages.trim(mFlipcastDataStore, limit, byteLimit);
+        }
+    }
+
+
+    private boolean isApplyingBatch() {
+        return mApplyingBatch.get() != null;
+    }
+
+
+    private void notifyChange(Uri uri) {
+        if (mContext != null) {
+            mContext.getContentResolver().notifyChange(uri, null);
+        }
     }
 
 
@@ -244,12 +596,90 @@ public class FlipcastDataProvider extends ContentProvider {
      * @return
      */
     private int handleUpdateOperation(Uri uri, ContentValues contentValues, String where, String[] whereArgs) {
-        int updateResult = mFlipcastDataStore.update(TableInAppMessages.NAME, contentValues, where, whereArgs);
-        Log.i(TAG, "Update result: " + updateResult);
+        int updateResult;
+        if (contentValues.containsKey(TableInAppMessages.COLUMN_TAGS) || contentValues.containsKey(TableInAppMessages.COLUMN_MESSAGE)) {
+            updateResult = updateIndexed(contentValues, where, whereArgs);
+        } else {
+            updateResult = mFlipcastDataStore.update(TableInAppMessages.NAME, contentValues, where, whereArgs);
+        }
+        if (FlipcastLog.isLoggable(Log.DEBUG)) {
+            FlipcastLog.d(TAG, "Update result: " + updateResult);
+        }
         return updateResult;
     }
 
 
+    /**
+     * Update messages whose tags or body change. The old tags and search entries are deleted by triggers; the new tags
+     * are written in the same transaction, as are the search entries of rows left with a compressed body. The caller's
+     * values are left as is; the encoded row is written from a copy.
+     */
+    private int updateIndexed(ContentValues values, String where, String[] whereArgs) {
+        ContentValues contentValues = new ContentValues(values);
+        String message = contentValues.getAsString(TableInAppMessages.COLUMN_MESSAGE);
+        boolean compressed = TableInAppMessages.encodeMessage(contentValues, mFlipcastDataStore.getCompressionThreshold());
+        boolean hasMessage = contentValues.containsKey(TableInAppMessages.COLUMN_MESSAGE);
+        boolean hasTags = contentValues.containsKey(TableInAppMessages.COLUMN_TAGS);
+        mFlipcastDataStore.startTransaction();
+        try {
+            List<IndexedRow> rows = new ArrayList<>();
+            Cursor cursor = InAppMessageCursor.wrap(mFlipcastDataStore.query(TableInAppMessages.NAME, new String[]{BaseColumns._ID,
+                    TableInAppMessages.COLUMN_ID, TableInAppMessages.COLUMN_MESSAGE, TableInAppMessages.COLUMN_TAGS, TableInAppMessages.COLUMN_CODEC},
+                    where, whereArgs, null, null, null));
+            try {
+                while (cursor.moveToNext()) {
+                    IndexedRow row = new IndexedRow(cursor.getLong(0), cursor.getString(1), cursor.getString(3));
+                    if (hasMessage) {
+                        row.compressed = compressed;
+                        row.message = message;
+                    } else if (cursor.getInt(4) == InAppMessageCodec.CODEC_DEFLATE) {
+                        //Tags of a compressed row change; the trigger cannot re-index it
+                        row.compressed = true;
+                        row.message = cursor.getString(2);
+                    }
+                    rows.add(row);
+                }
+            } finally {
+                cursor.close();
+            }
+            int updateResult = mFlipcastDataStore.update(TableInAppMessages.NAME, contentValues, where, whereArgs);
+            String id = contentValues.getAsString(TableInAppMessages.COLUMN_ID);
+            String tags = contentValues.getAsString(TableInAppMessages.COLUMN_TAGS);
+            for (IndexedRow row : rows) {
+                if (hasTags) {
+                    TableInAppMessageTags.write(mFlipcastDataStore, id == null ? row.id : id, tags);
+                }
+                if (row.compressed) {
+                    TableInAppMessagesSearch.write(mFlipcastDataStore, row.rowId, row.message, hasTags ? tags : row.tags);
+                }
+            }
+            mFlipcastDataStore.setTransactionSuccessful();
+            return updateResult;
+        } finally {
+            mFlipcastDataStore.endTransaction();
+        }
+    }
+
+
+    /**
+     * Row touched by {@link #updateIndexed(ContentValues, String, String[])}
+     */
+    private static class IndexedRow {
+
+        private final long rowId;
+        private final String id;
+        private final String tags;
+        private boolean compressed;
+        private String message;
+
+        IndexedRow(long rowId, String id, String tags) {
+            this.rowId = rowId;
+            this.id = id;
+            this.tags = tags;
+        }
+    }
+
+
     /**
      * Handles deleting a single inApp message
      *
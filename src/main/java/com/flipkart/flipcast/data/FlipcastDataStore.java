@@ -22,7 +22,16 @@ import android.content.Context;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
-import android.util.Log;
+
+import com.flipkart.flipcast.core.InAppMessage;
+import com.flipkart.flipcast.core.InAppMessageTypeAdapter;
+import com.flipkart.flipcast.log.FlipcastLog;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Implementation of {@linkplain SQLiteOpenHelper} to cache manage database operations and expose operations.
@@ -34,12 +43,31 @@ public class FlipcastDataStore extends SQLiteOpenHelper implements DataStoreCont
 
     private static final String TAG = "FlipcastDataStore";
     private static final String DB_NAME = "flipcast.db";
-    private static final int DB_VERSION = 2;
+    private static final int DB_VERSION = 9;
+    private static final int STREAM_BATCH_SIZE = 100;
     private SQLiteDatabase writableDatabase;
+    private static FlipcastDataStore sInstance;
+    private volatile InAppMessageMemoryCache memoryCache;
+    private final ThreadLocal<InAppMessageMemoryCache.Invalidation> transactionInvalidation = new ThreadLocal<>();
+    private final CacheUtils cacheUtils;
 
 
     public FlipcastDataStore(Context context) {
         super(context, DB_NAME, null, DB_VERSION);
+        cacheUtils = new CacheUtils(context);
+    }
+
+    /**
+     * Returns the data store shared by the library, so that all the writes go through the same connection.
+     *
+     * @param context
+     * @return FlipcastDataStore
+     */
+    public static synchronized FlipcastDataStore getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new FlipcastDataStore(context.getApplicationContext());
+        }
+        return sInstance;
     }
 
     //*********************************************************************
@@ -48,13 +76,15 @@ public class FlipcastDataStore extends SQLiteOpenHelper implements DataStoreCont
 
     @Override
     public void onCreate(SQLiteDatabase sqLiteDatabase) {
-        Log.d(TAG, "Created Database with DB Name:" + DB_NAME + " and version:" + DB_VERSION);
+        FlipcastLog.d(TAG, "Created Database with DB Name:" + DB_NAME + " and version:" + DB_VERSION);
         TableInAppMessages.create(sqLiteDatabase);
+        TableOutbox.create(sqLiteDatabase);
     }
 
     @Override
     public void onUpgrade(SQLiteDatabase sqLiteDatabase, int oldVersion, int newVersion) {
         TableInAppMessages.upgrade(sqLiteDatabase, oldVersion, newVersion);
+        TableOutbox.upgrade(sqLiteDatabase, oldVersion, newVersion);
     }
 
     //*********************************************************************
@@ -66,14 +96,38 @@ public class FlipcastDataStore extends SQLiteOpenHelper implements DataStoreCont
         return getReadableDatabase().query(table, columns, selection, selectionArgs, groupBy, having, orderBy);
     }
 
+    @Override
+    public Cursor query(String table, String[] columns, String selection, String[] selectionArgs, String groupBy, String having, String orderBy, String
+            limit) {
+        return getReadableDatabase().query(table, columns, selection, selectionArgs, groupBy, having, orderBy, limit);
+    }
+
+    @Override
+    public Cursor rawQuery(String sql, String[] selectionArgs) {
+        return getReadableDatabase().rawQuery(sql, selectionArgs);
+    }
+
     @Override
     public int update(String table, ContentValues values, String whereClause, String[] whereArgs) {
-        return getWritableDatabase().update(table, values, whereClause, whereArgs);
+        int updateCount = getWritableDatabase().update(table, values, whereClause, whereArgs);
+        if (updateCount > 0) {
+            //The updated rows are not known
+            invalidateMemoryCache(table, new InAppMessageMemoryCache.Invalidation().addAll());
+        }
+        return updateCount;
     }
 
     @Override
     public long insertWithOnConflict(String table, String nullColumnHack, ContentValues initialValues, int conflictAlgorithm) {
-        return getWritableDatabase().insertWithOnConflict(table, nullColumnHack, initialValues, conflictAlgorithm);
+        try {
+            return getWritableDatabase().insertWithOnConflict(table, nullColumnHack, initialValues, conflictAlgorithm);
+        } finally {
+            if (TableInAppMessages.NAME.equals(table) && initialValues != null) {
+                invalidateMemoryCache(table, new InAppMessageMemoryCache.Invalidation().add(initialValues.getAsString(TableInAppMessages.COLUMN_ID),
+                        initialValues.getAsString(TableInAppMessages.COLUMN_MESSAGE_TYPE), initialValues.getAsString(TableInAppMessages
+                                .COLUMN_PRIORITY)));
+            }
+        }
     }
 
     @Override
@@ -83,7 +137,19 @@ public class FlipcastDataStore extends SQLiteOpenHelper implements DataStoreCont
 
     @Override
     public void endTransaction() {
-        getWritableDatabase().endTransaction();
+        SQLiteDatabase db = getWritableDatabase();
+        try {
+            db.endTransaction();
+        } finally {
+            InAppMessageMemoryCache.Invalidation pending = transactionInvalidation.get();
+            if (pending != null && !db.inTransaction()) {
+                transactionInvalidation.remove();
+                InAppMessageMemoryCache cache = memoryCache;
+                if (cache != null) {
+                    cache.invalidate(pending);
+                }
+            }
+        }
     }
 
     @Override
@@ -93,9 +159,144 @@ public class FlipcastDataStore extends SQLiteOpenHelper implements DataStoreCont
 
     @Override
     public int delete(String tableName, String selectionCriteria, String[] selectionArgs) {
+        int deleteCount = getWritableDatabase().delete(tableName, selectionCriteria, selectionArgs);
+        if (deleteCount > 0) {
+            //The deleted rows are not known
+            invalidateMemoryCache(tableName, new InAppMessageMemoryCache.Invalidation().addAll());
+        }
+        return deleteCount;
+    }
+
+    @Override
+    public int purge(String tableName, String selectionCriteria, String[] selectionArgs) {
         return getWritableDatabase().delete(tableName, selectionCriteria, selectionArgs);
     }
 
+    //*********************************************************************
+    // APIs
+    //*********************************************************************
+
+    /**
+     * Enable the in-memory cache of decoded {@linkplain InAppMessage} objects. Has no effect if already enabled.
+     *
+     * @param maxBytes approximate memory budget of the cache
+     */
+    public synchronized void enableMemoryCache(int maxBytes) {
+        if (memoryCache == null) {
+            memoryCache = new InAppMessageMemoryCache(maxBytes);
+        }
+    }
+
+    /**
+     * @return minimum length of the message bodies to be stored compressed, or -1 if bodies are never compressed
+     */
+    public int getCompressionThreshold() {
+        return cacheUtils.getInAppCompressionThreshold();
+    }
+
+    /**
+     * @return the in-memory cache, or null if it is not enabled
+     */
+    public InAppMessageMemoryCache getMemoryCache() {
+        return memoryCache;
+    }
+
+    /**
+     * Inserts or replaces the given {@linkplain InAppMessage} objects in a single transaction.
+     *
+     * @param messages messages to be merged into the cache
+     * @return number of messages merged
+     */
+    public int mergeInAppMessages(List<InAppMessage> messages) {
+        InAppMessageWriter writer = new InAppMessageWriter(getWritableDatabase(), getCompressionThreshold());
+        try {
+            writeBatch(writer, messages);
+        } finally {
+            writer.close();
+        }
+        return writer.getCount();
+    }
+
+    /**
+     * Reads a messages response (<code>{"count": n, "messages": [...]}</code>) and writes the messages into the cache in
+     * batches of {@value #STREAM_BATCH_SIZE} as they are read. Every batch is written in its own short transaction, so
+     * the database is never locked while waiting on the response and at most one batch is held in memory.
+     *
+     * @param reader reader positioned at the start of the response
+     * @return writer holding the count and the newest creation time of the written messages
+     * @throws IOException when the response could not be read. The batches read completely before the failure stay
+     *                     written; writing the same messages again replaces them.
+     */
+    public InAppMessageWriter streamInAppMessages(JsonReader reader) throws IOException {
+        InAppMessageTypeAdapter adapter = new InAppMessageTypeAdapter();
+        InAppMessageWriter writer = new InAppMessageWriter(getWritableDatabase(), getCompressionThreshold());
+        List<InAppMessage> batch = new ArrayList<>(STREAM_BATCH_SIZE);
+        try {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if ("messages".equals(reader.nextName()) && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        InAppMessage message = adapter.read(reader);
+                        if (message != null) {
+                            batch.add(message);
+                        }
+                        if (batch.size() == STREAM_BATCH_SIZE) {
+                            writeBatch(writer, batch);
+                            batch.clear();
+                        }
+                    }
+                    reader.endArray();
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+            writeBatch(writer, batch);
+        } finally {
+            writer.close();
+        }
+        return writer;
+    }
+
+    private void writeBatch(InAppMessageWriter writer, List<InAppMessage> messages) {
+        if (messages.isEmpty()) {
+            return;
+        }
+        InAppMessageMemoryCache.Invalidation invalidation = new InAppMessageMemoryCache.Invalidation();
+        startTransaction();
+        try {
+            for (InAppMessage message : messages) {
+                writer.write(message);
+                invalidation.add(message.getId(), message.getMessageType(), message.getPriority());
+            }
+            invalidateMemoryCache(TableInAppMessages.NAME, invalidation);
+            setTransactionSuccessful();
+        } finally {
+            endTransaction();
+        }
+    }
+
+    /**
+     * Drop the cache entries affected by a write. Writes within a transaction are dropped once more when it ends, in case
+     * a reader cached the rows as they were before the commit.
+     */
+    private void invalidateMemoryCache(String table, InAppMessageMemoryCache.Invalidation invalidation) {
+        InAppMessageMemoryCache cache = memoryCache;
+        if (cache == null || !TableInAppMessages.NAME.equals(table)) {
+            return;
+        }
+        cache.invalidate(invalidation);
+        if (getWritableDatabase().inTransaction()) {
+            InAppMessageMemoryCache.Invalidation pending = transactionInvalidation.get();
+            if (pending == null) {
+                transactionInvalidation.set(new InAppMessageMemoryCache.Invalidation().add(invalidation));
+            } else {
+                pending.add(invalidation);
+            }
+        }
+    }
+
     @Override
     public SQLiteDatabase getWritableDatabase() {
         if (writableDatabase == null) {
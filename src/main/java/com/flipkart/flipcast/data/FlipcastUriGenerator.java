@@ -52,6 +52,65 @@ public class FlipcastUriGenerator {
     }
 
 
+    /**
+     * Build URI that can point to a page of {@linkplain com.flipkart.flipcast.core.InAppMessage} objects in cache
+     *
+     * @param limit  maximum number of messages in the page
+     * @param offset number of messages to skip
+     * @return
+     */
+    public Uri generateUriForInAppMessages(int limit, int offset) {
+        return getBaseUri().buildUpon().appendQueryParameter(FlipcastDataProvider.QUERY_PARAM_LIMIT, Integer.toString(limit)).appendQueryParameter
+                (FlipcastDataProvider.QUERY_PARAM_OFFSET, Integer.toString(offset)).build();
+    }
+
+
+    /**
+     * Build URI that can point to the page of {@linkplain com.flipkart.flipcast.core.InAppMessage} objects after the given
+     * message (newest first). Pass the 'created' and '_id' values of the last message of the current page to get the
+     * next page.
+     *
+     * @param created creation time of the last message already seen
+     * @param rowId   '_id' of the last message already seen
+     * @param limit   maximum number of messages in the page
+     * @return
+     */
+    public Uri generateUriForInAppMessagesBefore(long created, long rowId, int limit) {
+        return getBaseUri().buildUpon().appendQueryParameter(FlipcastDataProvider.QUERY_PARAM_BEFORE, Long.toString(created)).appendQueryParameter
+                (FlipcastDataProvider.QUERY_PARAM_BEFORE_ROW, Long.toString(rowId)).appendQueryParameter(FlipcastDataProvider.QUERY_PARAM_LIMIT,
+                Integer.toString(limit)).build();
+    }
+
+
+    /**
+     * Build URI that can point to all {@linkplain com.flipkart.flipcast.core.InAppMessage} objects in cache carrying the
+     * given tag (newest first)
+     *
+     * @param tag tag of the messages
+     * @return
+     */
+    public Uri generateUriForInAppMessagesWithTag(String tag) {
+        return getBaseUri().buildUpon().appendPath(FlipcastDataProvider.PATH_TAG).appendQueryParameter(FlipcastDataProvider.QUERY_PARAM_TAG, tag)
+                .build();
+    }
+
+
+    /**
+     * Build URI that can point to a page of {@linkplain com.flipkart.flipcast.core.InAppMessage} objects in cache
+     * matching the given text, best matches first
+     *
+     * @param text   words to search for in the message and tags; a word ending with '*' matches as a prefix
+     * @param limit  maximum number of messages in the page
+     * @param offset number of messages to skip
+     * @return
+     */
+    public Uri generateUriForSearch(String text, int limit, int offset) {
+        return getBaseUri().buildUpon().appendPath(FlipcastDataProvider.PATH_SEARCH).appendQueryParameter(FlipcastDataProvider.QUERY_PARAM_SEARCH,
+                text).appendQueryParameter(FlipcastDataProvider.QUERY_PARAM_LIMIT, Integer.toString(limit)).appendQueryParameter
+                (FlipcastDataProvider.QUERY_PARAM_OFFSET, Integer.toString(offset)).build();
+    }
+
+
     /**
      * Build URI that can point a {@linkplain com.flipkart.flipcast.core.InAppMessage} with matching id.
      *
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2016 Phaneesh Nagaraja <phaneesh.n@gmail.com>.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package com.flipkart.flipcast.data;
+
+import java.io.ByteArrayOutputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Storage codec of the message body in {@link TableInAppMessages}. Bodies longer than the compression threshold are
+ * deflated and stored as a BLOB, marked with {@link #CODEC_DEFLATE} in {@link TableInAppMessages#COLUMN_CODEC}.
+ *
+ * @author phaneesh
+ */
+public class InAppMessageCodec {
+
+    public static final int CODEC_PLAIN = 0;
+    public static final int CODEC_DEFLATE = 1;
+
+    private static final String CHARSET = "UTF-8";
+
+    private static final int BUFFER_SIZE = 4096;
+
+    private InAppMessageCodec() {
+    }
+
+    /**
+     * Compress a message body if it is longer than the threshold and compression actually makes it smaller
+     *
+     * @param message   message body
+     * @param threshold minimum length (in characters) of the bodies to be compressed or -1 to never compress
+     * @return compressed body or null if the body is to be stored as is
+     */
+    public static byte[] encode(String message, int threshold) {
+        if (threshold < 0 || message == null || message.length() <= threshold) {
+            return null;
+        }
+        byte[] plain = utf8(message);
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(plain);
+            deflater.finish();
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream(plain.length / 2);
+            byte[] buffer = new byte[BUFFER_SIZE];
+            while (!deflater.finished()) {
+                compressed.write(buffer, 0, deflater.deflate(buffer));
+                if (compressed.size() >= plain.length) {
+                    return null;
+                }
+            }
+            return compressed.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * @param compressed body compressed by {@link #encode(String, int)}
+     * @return message body
+     */
+    public static String decode(byte[] compressed) {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed);
+            ByteArrayOutputStream plain = new ByteArrayOutputStream(compressed.length * 4);
+            byte[] buffer = new byte[BUFFER_SIZE];
+            while (!inflater.finished()) {
+                int inflated = inflater.inflate(buffer);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IllegalStateException("Truncated compressed message");
+                }
+                plain.write(buffer, 0, inflated);
+            }
+            return plain.toString(CHARSET);
+        } catch (DataFormatException | UnsupportedEncodingException e) {
+            throw new IllegalStateException("Corrupt compressed message", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static byte[] utf8(String value) {
+        try {
+            return value.getBytes(CHARSET);
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
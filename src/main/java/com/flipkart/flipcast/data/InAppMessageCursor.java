@@ -0,0 +1,80 @@
+/*
+ * Copyright 2016 Phaneesh Nagaraja <phaneesh.n@gmail.com>.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package com.flipkart.flipcast.data;
+
+import android.database.Cursor;
+import android.database.CursorWrapper;
+
+/**
+ * Cursor over {@link TableInAppMessages} that decompresses the message body of compressed rows when it is read.
+ * Rows are decompressed only if the body is actually asked for and the last decompressed body is kept, so callers
+ * reading only metadata never pay for the bodies.
+ *
+ * @author phaneesh
+ */
+public class InAppMessageCursor extends CursorWrapper {
+
+    private final int mMessageIndex;
+    private final int mCodecIndex;
+    private int mDecodedPosition = -1;
+    private String mDecodedMessage;
+
+    public InAppMessageCursor(Cursor cursor) {
+        super(cursor);
+        mMessageIndex = cursor.getColumnIndex(TableInAppMessages.COLUMN_MESSAGE);
+        mCodecIndex = cursor.getColumnIndex(TableInAppMessages.COLUMN_CODEC);
+    }
+
+    /**
+     * Wrap a cursor if it carries message bodies which may be compressed
+     *
+     * @param cursor cursor over {@link TableInAppMessages}
+     * @return cursor decompressing the message bodies
+     */
+    public static Cursor wrap(Cursor cursor) {
+        if (cursor == null || cursor.getColumnIndex(TableInAppMessages.COLUMN_MESSAGE) < 0 || cursor.getColumnIndex(TableInAppMessages
+                .COLUMN_CODEC) < 0) {
+            return cursor;
+        }
+        return new InAppMessageCursor(cursor);
+    }
+
+    @Override
+    public String getString(int columnIndex) {
+        if (columnIndex != mMessageIndex || !isCompressed()) {
+            return super.getString(columnIndex);
+        }
+        int position = getPosition();
+        if (position != mDecodedPosition) {
+            mDecodedMessage = InAppMessageCodec.decode(super.getBlob(columnIndex));
+            mDecodedPosition = position;
+        }
+        return mDecodedMessage;
+    }
+
+    @Override
+    public int getType(int columnIndex) {
+        if (columnIndex == mMessageIndex && isCompressed()) {
+            return FIELD_TYPE_STRING;
+        }
+        return super.getType(columnIndex);
+    }
+
+    private boolean isCompressed() {
+        return !super.isNull(mCodecIndex) && super.getInt(mCodecIndex) == InAppMessageCodec.CODEC_DEFLATE;
+    }
+}
@@ -0,0 +1,251 @@
+/*
+ * Copyright 2016 Phaneesh Nagaraja <phaneesh.n@gmail.com>.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package com.flipkart.flipcast.data;
+
+import android.support.v4.util.LruCache;
+
+import com.flipkart.flipcast.core.InAppMessage;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Bounded in-memory cache of decoded {@linkplain InAppMessage} objects, keyed by message id and by (message type,
+ * priority) list queries. Entries are evicted least recently used first once the estimated size of the cached
+ * messages exceeds the budget.
+ * <p></p>
+ * Writes to {@linkplain TableInAppMessages} invalidate only the entries they affect: the written messages and the lists
+ * they belonged to or may now belong to. Writes of unknown rows invalidate the whole cache. Readers take a generation
+ * before going to the database and the result is cached only if no write happened meanwhile, so a stale read is never
+ * cached. Callers get their own copies of the cached messages. Expired messages are never served.
+ *
+ * @author phaneesh
+ */
+public class InAppMessageMemoryCache {
+
+    private static final String PREFIX_ID = "id:";
+    private static final String PREFIX_LIST = "list:";
+    private static final int OBJECT_OVERHEAD = 64;
+
+    private final LruCache<String, Object> mCache;
+    private volatile long mGeneration;
+
+    public InAppMessageMemoryCache(int maxBytes) {
+        mCache = new LruCache<String, Object>(maxBytes) {
+            @Override
+            protected int sizeOf(String key, Object value) {
+                if (value instanceof InAppMessage) {
+                    return estimateSize((InAppMessage) value);
+                }
+                int size = OBJECT_OVERHEAD;
+                for (InAppMessage message : ((CachedList) value).messages) {
+                    size += estimateSize(message);
+                }
+                return size;
+            }
+        };
+    }
+
+    /**
+     * @return generation to be passed while caching the result of a database read
+     */
+    public long generation() {
+        return mGeneration;
+    }
+
+    public InAppMessage get(String id, long now) {
+        InAppMessage message = (InAppMessage) mCache.get(PREFIX_ID + id);
+        if (message == null) {
+            return null;
+        }
+        if (TableInAppMessages.isExpired(message, now)) {
+            mCache.remove(PREFIX_ID + id);
+            return null;
+        }
+        return copy(message);
+    }
+
+    public void put(InAppMessage message, long generation) {
+        InAppMessage cached = copy(message);
+        synchronized (this) {
+            if (generation == mGeneration) {
+                mCache.put(PREFIX_ID + message.getId(), cached);
+            }
+        }
+    }
+
+    public List<InAppMessage> getList(String messageType, String priority, long now) {
+        String key = listKey(messageType, priority);
+        CachedList list = (CachedList) mCache.get(key);
+        if (list == null) {
+            return null;
+        }
+        if (list.expiresAt != 0 && list.expiresAt <= now) {
+            //One of the messages has expired since the list was cached
+            mCache.remove(key);
+            return null;
+        }
+        List<InAppMessage> messages = new ArrayList<>(list.messages.size());
+        for (InAppMessage message : list.messages) {
+            messages.add(copy(message));
+        }
+        return Collections.unmodifiableList(messages);
+    }
+
+    public void putList(String messageType, String priority, List<InAppMessage> messages, long generation) {
+        long expiresAt = 0;
+        List<InAppMessage> cached = new ArrayList<>(messages.size());
+        for (InAppMessage message : messages) {
+            cached.add(copy(message));
+            long messageExpiresAt = TableInAppMessages.getExpiresAt(message.getTtl(), message.getCreated());
+            if (messageExpiresAt != 0 && (expiresAt == 0 || messageExpiresAt < expiresAt)) {
+                expiresAt = messageExpiresAt;
+            }
+        }
+        synchronized (this) {
+            if (generation == mGeneration) {
+                mCache.put(listKey(messageType, priority), new CachedList(cached, expiresAt));
+            }
+        }
+    }
+
+    /**
+     * Drop all the cached entries
+     */
+    public void invalidate() {
+        synchronized (this) {
+            mGeneration++;
+            mCache.evictAll();
+        }
+    }
+
+    /**
+     * Drop the cached entries affected by the given writes
+     */
+    public void invalidate(Invalidation invalidation) {
+        if (invalidation.all) {
+            invalidate();
+            return;
+        }
+        synchronized (this) {
+            mGeneration++;
+            for (String id : invalidation.ids) {
+                mCache.remove(PREFIX_ID + id);
+            }
+            for (Map.Entry<String, Object> entry : mCache.snapshot().entrySet()) {
+                if (entry.getValue() instanceof CachedList && (invalidation.lists.contains(entry.getKey()) || ((CachedList) entry.getValue())
+                        .containsAny(invalidation.ids))) {
+                    mCache.remove(entry.getKey());
+                }
+            }
+        }
+    }
+
+    private static String listKey(String messageType, String priority) {
+        return PREFIX_LIST + messageType + '\u0000' + priority;
+    }
+
+    private static InAppMessage copy(InAppMessage message) {
+        return new InAppMessage(message.getId(), message.getConfigName(), message.getPriority(), message.getDeviceId(), message.getMessageType(),
+                message.getMessage(), message.getTags() == null ? null : new ArrayList<>(message.getTags()), message.getTtl(), message.getStatus(),
+                message.getCreated());
+    }
+
+    private static int estimateSize(InAppMessage message) {
+        int chars = length(message.getId()) + length(message.getConfigName()) + length(message.getPriority()) + length(message.getDeviceId())
+                + length(message.getMessageType()) + length(message.getMessage()) + length(message.getStatus());
+        if (message.getTags() != null) {
+            for (String tag : message.getTags()) {
+                chars += length(tag);
+            }
+        }
+        return OBJECT_OVERHEAD + 2 * chars;
+    }
+
+    private static int length(String value) {
+        return value == null ? 0 : value.length();
+    }
+
+    /**
+     * Cached list along with the earliest expiry among its messages
+     */
+    private static class CachedList {
+
+        private final List<InAppMessage> messages;
+
+        private final long expiresAt;
+
+        CachedList(List<InAppMessage> messages, long expiresAt) {
+            this.messages = messages;
+            this.expiresAt = expiresAt;
+        }
+
+        boolean containsAny(Set<String> ids) {
+            for (InAppMessage message : messages) {
+                if (ids.contains(message.getId())) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Entries affected by one or more writes: the written messages and every list they may belong to after the write.
+     * Lists they belonged to before the write are found through their ids.
+     */
+    public static class Invalidation {
+
+        private final Set<String> ids = new HashSet<>();
+
+        private final Set<String> lists = new HashSet<>();
+
+        private boolean all;
+
+        /**
+         * A message was written with the given message type and priority
+         */
+        public Invalidation add(String id, String messageType, String priority) {
+            ids.add(id);
+            lists.add(listKey(messageType, priority));
+            lists.add(listKey(messageType, null));
+            lists.add(listKey(null, priority));
+            lists.add(listKey(null, null));
+            return this;
+        }
+
+        /**
+         * Rows which are not known were written
+         */
+        public Invalidation addAll() {
+            all = true;
+            return this;
+        }
+
+        public Invalidation add(Invalidation invalidation) {
+            ids.addAll(invalidation.ids);
+            lists.addAll(invalidation.lists);
+            all |= invalidation.all;
+            return this;
+        }
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2016 Phaneesh Nagaraja <phaneesh.n@gmail.com>.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package com.flipkart.flipcast.data;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import com.flipkart.flipcast.core.InAppMessage;
+
+/**
+ * Writes {@linkplain InAppMessage} objects into {@linkplain TableInAppMessages} through a single compiled
+ * INSERT OR REPLACE statement, along with their tags into {@linkplain TableInAppMessageTags}. Bodies longer than the
+ * compression threshold are compressed. The caller is expected to hold a transaction while writing.
+ *
+ * @author phaneesh
+ */
+public class InAppMessageWriter {
+
+    private final SQLiteStatement mInsertStatement;
+    private final SQLiteStatement mTagStatement;
+    private final SQLiteStatement mSearchStatement;
+    private final int mCompressionThreshold;
+    private int mCount;
+    private long mMaxCreated;
+
+    InAppMessageWriter(SQLiteDatabase db, int compressionThreshold) {
+        mInsertStatement = db.compileStatement(TableInAppMessages.INSERT_OR_REPLACE);
+        mTagStatement = db.compileStatement(TableInAppMessageTags.INSERT_OR_IGNORE);
+        mSearchStatement = db.compileStatement(TableInAppMessagesSearch.INSERT);
+        mCompressionThreshold = compressionThreshold;
+    }
+
+    /**
+     * Insert or replace a single {@linkplain InAppMessage}
+     *
+     * @param message message to be written
+     */
+    public void write(InAppMessage message) {
+        mInsertStatement.clearBindings();
+        boolean compressed = TableInAppMessages.bind(mInsertStatement, message, mCompressionThreshold);
+        long rowId = mInsertStatement.executeInsert();
+        if (rowId != -1) {
+            TableInAppMessageTags.write(mTagStatement, message.getId(), message.getTags());
+            if (compressed) {
+                //Triggers index only plain bodies
+                TableInAppMessagesSearch.write(mSearchStatement, rowId, message.getMessage(), TableInAppMessages.getCommaSeparatedTags(message));
+            }
+            mCount++;
+        }
+        mMaxCreated = Math.max(mMaxCreated, message.getCreated());
+    }
+
+    /**
+     * @return number of messages written
+     */
+    public int getCount() {
+        return mCount;
+    }
+
+    /**
+     * @return creation time of the newest message written
+     */
+    public long getMaxCreated() {
+        return mMaxCreated;
+    }
+
+    void close() {
+        mInsertStatement.close();
+        mTagStatement.close();
+        mSearchStatement.close();
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright 2016 Phaneesh Nagaraja <phaneesh.n@gmail.com>.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package com.flipkart.flipcast.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import com.flipkart.flipcast.log.FlipcastLog;
+
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Tags of the cached {@linkplain com.flipkart.flipcast.core.InAppMessage} objects, one row per message and tag, so
+ * that messages can be looked up by tag through an index instead of scanning the comma separated tags of
+ * {@link TableInAppMessages}.
+ * <p></p>
+ * Rows are written along with the message, in the same transaction. Triggers on {@link TableInAppMessages} delete the
+ * tags of a message when the message is deleted (including replaced, trimmed or purged) or its tags are updated.
+ *
+ * @author phaneesh
+ */
+public class TableInAppMessageTags {
+
+    private static final String TAG = "TableInAppMessageTags";
+    public static final String NAME = "InAppMessageTags";
+
+    public static final String COLUMN_MESSAGE_ID = "message_id";
+    public static final String COLUMN_TAG = "tag";
+
+    public static final String INDEX_TAG = "idx_" + NAME + "_tag";
+    public static final String TRIGGER_DELETE = "trg_" + TableInAppMessages.NAME + "_tags_delete";
+    public static final String TRIGGER_UPDATE = "trg_" + TableInAppMessages.NAME + "_tags_update";
+
+    public static final String INSERT_OR_IGNORE = "INSERT OR IGNORE INTO " + NAME + " (" + COLUMN_MESSAGE_ID + ", " + COLUMN_TAG + ") VALUES " +
+            "(?, ?)";
+
+    /**
+     * Selection on {@link TableInAppMessages} matching the messages with a tag. Takes the tag as argument.
+     */
+    public static final String SELECTION_TAGGED = TableInAppMessages.COLUMN_ID + " IN (SELECT " + COLUMN_MESSAGE_ID + " FROM " + NAME + " WHERE "
+            + COLUMN_TAG + " = ?)";
+
+    public static void create(final SQLiteDatabase db) {
+        db.execSQL(String.format(Locale.US, "CREATE TABLE IF NOT EXISTS %s (%s TEXT NOT NULL, %s TEXT NOT NULL, UNIQUE (%s, %s));", NAME,
+                COLUMN_MESSAGE_ID, COLUMN_TAG, COLUMN_MESSAGE_ID, COLUMN_TAG));
+        db.execSQL(String.format(Locale.US, "CREATE INDEX IF NOT EXISTS %s ON %s (%s, %s);", INDEX_TAG, NAME, COLUMN_TAG, COLUMN_MESSAGE_ID));
+        db.execSQL(String.format(Locale.US, "CREATE TRIGGER IF NOT EXISTS %s AFTER DELETE ON %s BEGIN DELETE FROM %s WHERE %s = OLD.%s; END;",
+                TRIGGER_DELETE, TableInAppMessages.NAME, NAME, COLUMN_MESSAGE_ID, TableInAppMessages.COLUMN_ID));
+        db.execSQL(String.format(Locale.US, "CREATE TRIGGER IF NOT EXISTS %s AFTER UPDATE OF %s ON %s BEGIN DELETE FROM %s WHERE %s = OLD.%s; END;",
+                TRIGGER_UPDATE, TableInAppMessages.COLUMN_TAGS, TableInAppMessages.NAME, NAME, COLUMN_MESSAGE_ID, TableInAppMessages.COLUMN_ID));
+    }
+
+    public static void upgrade(final SQLiteDatabase db, final int oldVersion, final int newVersion) {
+        if (oldVersion < 7) {
+            FlipcastLog.i(TAG, "Creating TableInAppMessageTags from the cached messages");
+            create(db);
+            SQLiteStatement statement = db.compileStatement(INSERT_OR_IGNORE);
+            Cursor cursor = db.query(TableInAppMessages.NAME, new String[]{TableInAppMessages.COLUMN_ID, TableInAppMessages.COLUMN_TAGS}, null,
+                    null, null, null, null);
+            try {
+                while (cursor.moveToNext()) {
+                    write(statement, cursor.getString(0), TableInAppMessages.getTagsFromCommaSeparatedTag(cursor.getString(1)));
+                }
+            } finally {
+                cursor.close();
+                statement.close();
+            }
+        }
+    }
+
+    public static void drop(final SQLiteDatabase db) {
+        db.execSQL("DROP TABLE IF EXISTS " + NAME);
+    }
+
+    //*********************************************************************
+    // APIs
+    //*********************************************************************
+
+    /**
+     * Write the tags of a message through a statement compiled from {@link #INSERT_OR_IGNORE}
+     *
+     * @param statement compiled insert statement
+     * @param messageId id of the message
+     * @param tags      tags of the message, may be null
+     */
+    public static void write(final SQLiteStatement statement, String messageId, List<String> tags) {
+        if (messageId == null || tags == null) {
+            return;
+        }
+        for (String tag : tags) {
+            if (tag == null) {
+                continue;
+            }
+            statement.clearBindings();
+            statement.bindString(1, messageId);
+            statement.bindString(2, tag);
+            statement.executeInsert();
+        }
+    }
+
+    /**
+     * Write the tags of a message, given as stored in {@link TableInAppMessages#COLUMN_TAGS}
+     *
+     * @param store             data store holding the table
+     * @param messageId         id of the message
+     * @param commaSeparatedTag tags of the message
+     */
+    public static void write(final DataStoreContract store, String messageId, String commaSeparatedTag) {
+        List<String> tags = TableInAppMessages.getTagsFromCommaSeparatedTag(commaSeparatedTag);
+        if (messageId == null || tags == null) {
+            return;
+        }
+        ContentValues values = new ContentValues(2);
+        for (String tag : tags) {
+            values.put(COLUMN_MESSAGE_ID, messageId);
+            values.put(COLUMN_TAG, tag);
+            store.insertWithOnConflict(NAME, null, values, SQLiteDatabase.CONFLICT_IGNORE);
+        }
+    }
+
+    //*********************************************************************
+    // End of class
+    //*********************************************************************
+
+}
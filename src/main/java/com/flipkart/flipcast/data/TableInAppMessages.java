@@ -20,12 +20,15 @@ package com.flipkart.flipcast.data;
 import android.content.ContentValues;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
 import android.provider.BaseColumns;
 import android.text.TextUtils;
 import android.util.Log;
 
 import com.flipkart.flipcast.core.InAppMessage;
+import com.flipkart.flipcast.log.FlipcastLog;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Locale;
@@ -54,6 +57,66 @@ public class TableInAppMessages {
 
     public static final String COLUMN_TTL = "ttl";
     public static final String COLUMN_CREATED = "created";
+    public static final String COLUMN_EXPIRES_AT = "expires_at";
+    public static final String COLUMN_CODEC = "codec";
+
+    public static final String INDEX_CONFIG_TYPE_PRIORITY_CREATED = "idx_" + NAME + "_config_type_priority_created";
+    public static final String INDEX_STATUS_CREATED = "idx_" + NAME + "_status_created";
+    public static final String INDEX_CREATED = "idx_" + NAME + "_created";
+    public static final String INDEX_EXPIRES_AT = "idx_" + NAME + "_expires_at";
+
+    /**
+     * Single row table holding the running row count and message size of the cache, maintained by triggers
+     */
+    public static final String STATS_NAME = NAME + "Stats";
+    public static final String COLUMN_ROW_COUNT = "row_count";
+    public static final String COLUMN_BYTE_COUNT = "byte_count";
+
+    public static final String TRIGGER_REPLACE = "trg_" + NAME + "_replace";
+    public static final String TRIGGER_STATS_INSERT = "trg_" + NAME + "_stats_insert";
+    public static final String TRIGGER_STATS_DELETE = "trg_" + NAME + "_stats_delete";
+    public static final String TRIGGER_STATS_UPDATE = "trg_" + NAME + "_stats_update";
+
+    /**
+     * Oldest messages are inspected in chunks of this size while evicting down to the byte budget
+     */
+    private static final int EVICTION_CHUNK_SIZE = 50;
+
+    /**
+     * Selection matching the messages that have not expired yet. Takes the current time as argument.
+     */
+    public static final String SELECTION_NOT_EXPIRED = "(" + COLUMN_EXPIRES_AT + " = 0 OR " + COLUMN_EXPIRES_AT + " > ?)";
+
+    /**
+     * Newest messages first. The row id breaks ties between messages created at the same time.
+     */
+    public static final String ORDER_NEWEST_FIRST = COLUMN_CREATED + " DESC, " + BaseColumns._ID + " DESC";
+
+    /**
+     * Selection matching the messages after a message in {@link #ORDER_NEWEST_FIRST} order. Takes its creation time twice
+     * and then its row id as arguments.
+     */
+    public static final String SELECTION_BEFORE = "(" + COLUMN_CREATED + " < ? OR (" + COLUMN_CREATED + " = ? AND " + BaseColumns._ID + " < ?))";
+
+    /**
+     * Expired messages are purged in chunks of this size, so that the write lock is released between chunks
+     */
+    private static final int PURGE_CHUNK_SIZE = 100;
+
+    /**
+     * Purging stops after this many milliseconds and continues with the next purge
+     */
+    private static final long PURGE_TIME_BUDGET = 50;
+
+    /**
+     * Columns written by {@link #bind(SQLiteStatement, InAppMessage)}, in binding order
+     */
+    private static final String[] INSERT_COLUMNS = new String[]{COLUMN_ID, COLUMN_CONFIG_NAME, COLUMN_PRIORITY, COLUMN_DEVICE_ID,
+            COLUMN_MESSAGE_TYPE, COLUMN_MESSAGE, COLUMN_TAGS, COLUMN_TTL, COLUMN_STATUS, COLUMN_CREATED, COLUMN_EXPIRES_AT,
+            COLUMN_CODEC};
+
+    public static final String INSERT_OR_REPLACE = "INSERT OR REPLACE INTO " + NAME + " (" + TextUtils.join(SQLConstants.COMMA,
+            INSERT_COLUMNS) + ") VALUES (" + TextUtils.join(SQLConstants.COMMA, repeat("?", INSERT_COLUMNS.length)) + ")";
 
     public static void create(final SQLiteDatabase db) {
 
@@ -67,22 +130,103 @@ public class TableInAppMessages {
                 String.format(Locale.US, SQLConstants.DATA_TEXT, COLUMN_MESSAGE, ""),
                 String.format(Locale.US, SQLConstants.DATA_TEXT, COLUMN_TAGS, ""),
                 String.format(Locale.US, SQLConstants.DATA_TEXT, COLUMN_STATUS, ""),
+                String.format(Locale.US, SQLConstants.DATA_TEXT, COLUMN_READ_STATUS, ""),
                 String.format(Locale.US, SQLConstants.DATA_INTEGER, COLUMN_TTL, 0),
-                String.format(Locale.US, SQLConstants.DATA_INTEGER, COLUMN_CREATED, 0)});
+                String.format(Locale.US, SQLConstants.DATA_INTEGER, COLUMN_CREATED, 0),
+                String.format(Locale.US, SQLConstants.DATA_INTEGER, COLUMN_EXPIRES_AT, 0),
+                String.format(Locale.US, SQLConstants.DATA_INTEGER, COLUMN_CODEC, InAppMessageCodec.CODEC_PLAIN)});
 
-        Log.d(TAG, "Column Def:" + columnDef);
+        if (FlipcastLog.isLoggable(Log.DEBUG)) {
+            FlipcastLog.d(TAG, "Column Def:" + columnDef);
+        }
         db.execSQL(String.format(Locale.US, SQLConstants.CREATE_TABLE, NAME, columnDef));
+        createIndexes(db);
+        createStats(db);
+        TableInAppMessageTags.create(db);
+        TableInAppMessagesSearch.create(db);
     }
 
     public static void upgrade(final SQLiteDatabase db, final int oldVersion, final int newVersion) {
-        Log.i(TAG, "On Upgrade of TableInAppMessages Called. Just dropping the table and recreating it.");
-        db.execSQL("DROP TABLE IF EXISTS " + NAME);
-        create(db);
+        if (oldVersion < 2) {
+            FlipcastLog.i(TAG, "On Upgrade of TableInAppMessages Called from version " + oldVersion + ". Just dropping the table and recreating it.");
+            db.execSQL("DROP TABLE IF EXISTS " + NAME);
+            create(db);
+            return;
+        }
+        if (oldVersion < 3) {
+            FlipcastLog.i(TAG, "Upgrading TableInAppMessages to version 3. Adding " + COLUMN_READ_STATUS + " column and indexes.");
+            db.execSQL(String.format(Locale.US, SQLConstants.ADD_COLUMN, NAME, String.format(Locale.US, SQLConstants.DATA_TEXT, COLUMN_READ_STATUS,
+                    "")));
+        }
+        if (oldVersion < 5) {
+            FlipcastLog.i(TAG, "Upgrading TableInAppMessages to version 5. Adding " + COLUMN_EXPIRES_AT + " column.");
+            db.execSQL(String.format(Locale.US, SQLConstants.ADD_COLUMN, NAME, String.format(Locale.US, SQLConstants.DATA_INTEGER, COLUMN_EXPIRES_AT,
+                    0)));
+            db.execSQL("UPDATE " + NAME + " SET " + COLUMN_EXPIRES_AT + " = " + COLUMN_CREATED + " + " + COLUMN_TTL + " WHERE " + COLUMN_TTL
+                    + " > 0");
+        }
+        if (oldVersion < 9) {
+            FlipcastLog.i(TAG, "Upgrading TableInAppMessages to version 9. Adding " + COLUMN_CODEC + " column.");
+            db.execSQL(String.format(Locale.US, SQLConstants.ADD_COLUMN, NAME, String.format(Locale.US, SQLConstants.DATA_INTEGER, COLUMN_CODEC,
+                    InAppMessageCodec.CODEC_PLAIN)));
+        }
+        createIndexes(db);
+        if (oldVersion < 6) {
+            FlipcastLog.i(TAG, "Upgrading TableInAppMessages to version 6. Adding " + STATS_NAME + " table.");
+            createStats(db);
+        }
+        TableInAppMessageTags.upgrade(db, oldVersion, newVersion);
+        TableInAppMessagesSearch.upgrade(db, oldVersion, newVersion);
+    }
+
+    /**
+     * Indexes matching the access paths of the cache: lookups by config/message type/priority, lookups by status,
+     * trimming by creation time and purging by expiry.
+     *
+     * @param db database
+     */
+    private static void createIndexes(final SQLiteDatabase db) {
+        db.execSQL(String.format(Locale.US, SQLConstants.CREATE_INDEX, INDEX_CONFIG_TYPE_PRIORITY_CREATED, NAME, TextUtils.join(SQLConstants.COMMA,
+                new String[]{COLUMN_CONFIG_NAME, COLUMN_MESSAGE_TYPE, COLUMN_PRIORITY, COLUMN_CREATED})));
+        db.execSQL(String.format(Locale.US, SQLConstants.CREATE_INDEX, INDEX_STATUS_CREATED, NAME, TextUtils.join(SQLConstants.COMMA,
+                new String[]{COLUMN_STATUS, COLUMN_CREATED})));
+        db.execSQL(String.format(Locale.US, SQLConstants.CREATE_INDEX, INDEX_CREATED, NAME, COLUMN_CREATED));
+        db.execSQL(String.format(Locale.US, SQLConstants.CREATE_INDEX, INDEX_EXPIRES_AT, NAME, COLUMN_EXPIRES_AT));
+    }
+
+    /**
+     * Creates the stats table, seeds it from the rows present and creates the triggers keeping it up to date. A
+     * replaced message is deleted by a trigger before the new one is inserted, because conflict resolution does not fire
+     * delete triggers.
+     *
+     * @param db database
+     */
+    private static void createStats(final SQLiteDatabase db) {
+        String messageSize = "IFNULL(LENGTH(CAST(%s." + COLUMN_MESSAGE + " AS BLOB)), 0)";
+        db.execSQL(String.format(Locale.US, SQLConstants.CREATE_TABLE, STATS_NAME, TextUtils.join(SQLConstants.COMMA, new String[]{
+                String.format(Locale.US, SQLConstants.DATA_INTEGER, COLUMN_ROW_COUNT, 0),
+                String.format(Locale.US, SQLConstants.DATA_INTEGER, COLUMN_BYTE_COUNT, 0)})));
+        db.execSQL("DELETE FROM " + STATS_NAME);
+        db.execSQL("INSERT INTO " + STATS_NAME + " (" + COLUMN_ROW_COUNT + SQLConstants.COMMA + COLUMN_BYTE_COUNT + ") SELECT COUNT(*), IFNULL(SUM"
+                + "(" + String.format(Locale.US, messageSize, NAME) + "), 0) FROM " + NAME);
+        db.execSQL(String.format(Locale.US, SQLConstants.CREATE_TRIGGER, TRIGGER_REPLACE, "BEFORE INSERT", NAME,
+                "DELETE FROM " + NAME + " WHERE " + COLUMN_ID + " = NEW." + COLUMN_ID));
+        db.execSQL(String.format(Locale.US, SQLConstants.CREATE_TRIGGER, TRIGGER_STATS_INSERT, "AFTER INSERT", NAME,
+                "UPDATE " + STATS_NAME + " SET " + COLUMN_ROW_COUNT + " = " + COLUMN_ROW_COUNT + " + 1, " + COLUMN_BYTE_COUNT + " = " +
+                        COLUMN_BYTE_COUNT + " + " + String.format(Locale.US, messageSize, "NEW")));
+        db.execSQL(String.format(Locale.US, SQLConstants.CREATE_TRIGGER, TRIGGER_STATS_DELETE, "AFTER DELETE", NAME,
+                "UPDATE " + STATS_NAME + " SET " + COLUMN_ROW_COUNT + " = " + COLUMN_ROW_COUNT + " - 1, " + COLUMN_BYTE_COUNT + " = " +
+                        COLUMN_BYTE_COUNT + " - " + String.format(Locale.US, messageSize, "OLD")));
+        db.execSQL(String.format(Locale.US, SQLConstants.CREATE_TRIGGER, TRIGGER_STATS_UPDATE, "AFTER UPDATE OF " + COLUMN_MESSAGE, NAME,
+                "UPDATE " + STATS_NAME + " SET " + COLUMN_BYTE_COUNT + " = " + COLUMN_BYTE_COUNT + " - " + String.format(Locale.US, messageSize,
+                        "OLD") + " + " + String.format(Locale.US, messageSize, "NEW")));
     }
 
     public static void clear(final SQLiteDatabase db) {
-        Log.i(TAG, "On Clear of TableInAppMessages Called.");
+        FlipcastLog.i(TAG, "On Clear of TableInAppMessages Called.");
         db.execSQL("DROP TABLE IF EXISTS " + NAME);
+        TableInAppMessageTags.drop(db);
+        TableInAppMessagesSearch.drop(db);
         create(db);
     }
 
@@ -104,16 +248,106 @@ public class TableInAppMessages {
         values.put(TableInAppMessages.COLUMN_TTL, inAppMessage.getTtl());
         values.put(TableInAppMessages.COLUMN_STATUS, inAppMessage.getStatus());
         values.put(TableInAppMessages.COLUMN_CREATED, inAppMessage.getCreated());
+        values.put(TableInAppMessages.COLUMN_EXPIRES_AT, getExpiresAt(inAppMessage.getTtl(), inAppMessage.getCreated()));
         return values;
     }
 
+    /**
+     * Fill in the expiry of a message being inserted with values not built by {@link #getContentValues(InAppMessage)}
+     *
+     * @param values values of the message
+     */
+    public static void putExpiresAt(ContentValues values) {
+        if (values.containsKey(COLUMN_EXPIRES_AT)) {
+            return;
+        }
+        Long ttl = values.getAsLong(COLUMN_TTL);
+        Long created = values.getAsLong(COLUMN_CREATED);
+        values.put(COLUMN_EXPIRES_AT, getExpiresAt(ttl == null ? 0 : ttl, created == null ? 0 : created));
+    }
+
+    /**
+     * @return time at which a message expires or 0 if it never expires
+     */
+    public static long getExpiresAt(long ttl, long created) {
+        return ttl > 0 ? created + ttl : 0;
+    }
+
+    /**
+     * @return whether the message has expired at the given time
+     */
+    public static boolean isExpired(InAppMessage inAppMessage, long now) {
+        long expiresAt = getExpiresAt(inAppMessage.getTtl(), inAppMessage.getCreated());
+        return expiresAt != 0 && expiresAt <= now;
+    }
+
+    /**
+     * Compress the message body of values being written, if it is longer than the compression threshold
+     *
+     * @param values               values of the message
+     * @param compressionThreshold minimum length of the bodies to be compressed or -1 to never compress
+     * @return whether the body was compressed
+     */
+    public static boolean encodeMessage(ContentValues values, int compressionThreshold) {
+        byte[] compressed = InAppMessageCodec.encode(values.getAsString(COLUMN_MESSAGE), compressionThreshold);
+        if (compressed == null) {
+            if (values.containsKey(COLUMN_MESSAGE)) {
+                values.put(COLUMN_CODEC, InAppMessageCodec.CODEC_PLAIN);
+            }
+            return false;
+        }
+        values.put(COLUMN_MESSAGE, compressed);
+        values.put(COLUMN_CODEC, InAppMessageCodec.CODEC_DEFLATE);
+        return true;
+    }
+
+    /**
+     * Bind an {@linkplain InAppMessage} to a statement compiled from {@link #INSERT_OR_REPLACE}
+     *
+     * @param statement    compiled insert statement
+     * @param inAppMessage message to be bound
+     */
+    public static void bind(final SQLiteStatement statement, InAppMessage inAppMessage) {
+        bind(statement, inAppMessage, -1);
+    }
+
+    /**
+     * Bind an {@linkplain InAppMessage} to a statement compiled from {@link #INSERT_OR_REPLACE}, compressing the body if
+     * it is longer than the compression threshold
+     *
+     * @param statement            compiled insert statement
+     * @param inAppMessage         message to be bound
+     * @param compressionThreshold minimum length of the bodies to be compressed or -1 to never compress
+     * @return whether the body was compressed
+     */
+    public static boolean bind(final SQLiteStatement statement, InAppMessage inAppMessage, int compressionThreshold) {
+        byte[] compressed = InAppMessageCodec.encode(inAppMessage.getMessage(), compressionThreshold);
+        bindString(statement, 1, inAppMessage.getId());
+        bindString(statement, 2, inAppMessage.getConfigName());
+        bindString(statement, 3, inAppMessage.getPriority());
+        bindString(statement, 4, inAppMessage.getDeviceId());
+        bindString(statement, 5, inAppMessage.getMessageType());
+        if (compressed == null) {
+            bindString(statement, 6, inAppMessage.getMessage());
+        } else {
+            statement.bindBlob(6, compressed);
+        }
+        bindString(statement, 7, getCommaSeparatedTags(inAppMessage));
+        statement.bindLong(8, inAppMessage.getTtl());
+        bindString(statement, 9, inAppMessage.getStatus());
+        statement.bindLong(10, inAppMessage.getCreated());
+        statement.bindLong(11, getExpiresAt(inAppMessage.getTtl(), inAppMessage.getCreated()));
+        statement.bindLong(12, compressed == null ? InAppMessageCodec.CODEC_PLAIN : InAppMessageCodec.CODEC_DEFLATE);
+        return compressed != null;
+    }
+
     public static InAppMessage readSingleInAppMessageFromCursor(final Cursor cursor) {
         String id = cursor.getString(cursor.getColumnIndex(TableInAppMessages.COLUMN_ID));
         String configName = cursor.getString(cursor.getColumnIndex(TableInAppMessages.COLUMN_CONFIG_NAME));
         String priority = cursor.getString(cursor.getColumnIndex(TableInAppMessages.COLUMN_PRIORITY));
         String deviceId = cursor.getString(cursor.getColumnIndex(TableInAppMessages.COLUMN_DEVICE_ID));
         String messageType = cursor.getString(cursor.getColumnIndex(TableInAppMessages.COLUMN_MESSAGE_TYPE));
-        String message = cursor.getString(cursor.getColumnIndex(TableInAppMessages.COLUMN_MESSAGE));
+        String message = readMessage(cursor);
 
         String commaSeparatedTag = cursor.getString(cursor.getColumnIndex(TableInAppMessages.COLUMN_TAGS));
         List<String> tags = getTagsFromCommaSeparatedTag(commaSeparatedTag);
@@ -124,32 +358,242 @@ public class TableInAppMessages {
         return new InAppMessage(id, configName, priority, deviceId, messageType, message, tags, ttl, status, created);
     }
 
+    /**
+     * Read the message body of the current row, decompressing it if needed
+     *
+     * @param cursor cursor over the table
+     * @return message body
+     */
+    public static String readMessage(final Cursor cursor) {
+        int messageIndex = cursor.getColumnIndex(COLUMN_MESSAGE);
+        if (cursor instanceof InAppMessageCursor) {
+            return cursor.getString(messageIndex);
+        }
+        int codecIndex = cursor.getColumnIndex(COLUMN_CODEC);
+        if (codecIndex >= 0 && cursor.getInt(codecIndex) == InAppMessageCodec.CODEC_DEFLATE) {
+            return InAppMessageCodec.decode(cursor.getBlob(messageIndex));
+        }
+        return cursor.getString(messageIndex);
+    }
+
+    /**
+     * Add the codec column to a projection asking for the message body, so that compressed bodies can be read
+     *
+     * @param projection requested columns, null for all columns
+     * @return projection to be queried
+     */
+    public static String[] withCodec(String[] projection) {
+        if (projection == null) {
+            return null;
+        }
+        List<String> columns = Arrays.asList(projection);
+        if (!columns.contains(COLUMN_MESSAGE) || columns.contains(COLUMN_CODEC)) {
+            return projection;
+        }
+        String[] withCodec = Arrays.copyOf(projection, projection.length + 1);
+        withCodec[projection.length] = COLUMN_CODEC;
+        return withCodec;
+    }
+
+    /**
+     * Trim the table to the specified number of newest rows
+     *
+     * @param store data store holding the table
+     * @param count Number of rows that the table to be trimmed
+     * @return number of rows deleted
+     */
+    public static int trimToRows(final DataStoreContract store, int count) {
+        return trim(store, count, -1);
+    }
+
+    /**
+     * Evict the oldest messages until the table holds at most maxRows rows and at most maxBytes bytes of messages. The
+     * running totals are read from the stats table and the overflow is deleted through the index on created, so the
+     * cost is proportional to the number of rows evicted rather than the size of the table.
+     *
+     * @param store    data store holding the table
+     * @param maxRows  maximum number of rows or -1 for no limit
+     * @param maxBytes maximum size of messages in bytes or -1 for no limit
+     * @return number of rows deleted
+     */
+    public static int trim(final DataStoreContract store, int maxRows, long maxBytes) {
+        long[] stats = readStats(store);
+        int deleteCount = 0;
+        if (maxRows >= 0 && stats[0] > maxRows) {
+            deleteCount += store.delete(NAME, BaseColumns._ID + " IN (SELECT " + BaseColumns._ID + " FROM " + NAME + " ORDER BY " +
+                    COLUMN_CREATED + " LIMIT " + (stats[0] - maxRows) + ")", null);
+            stats = readStats(store);
+        }
+        if (maxBytes >= 0 && stats[1] > maxBytes) {
+            deleteCount += evictBytes(store, stats[1] - maxBytes);
+        }
+        if (deleteCount > 0 && FlipcastLog.isLoggable(Log.DEBUG)) {
+            FlipcastLog.d(TAG, "Trimmed the table. Deleted " + deleteCount + " rows.");
+        }
+        return deleteCount;
+    }
+
+    /**
+     * @return row count and message size in bytes of the table
+     */
+    private static long[] readStats(final DataStoreContract store) {
+        Cursor cursor = store.query(STATS_NAME, new String[]{COLUMN_ROW_COUNT, COLUMN_BYTE_COUNT}, null, null, null, null, null);
+        try {
+            return cursor.moveToFirst() ? new long[]{cursor.getLong(0), cursor.getLong(1)} : new long[]{0, 0};
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Delete the oldest messages till at least the given number of message bytes are freed
+     */
+    private static int evictBytes(final DataStoreContract store, long overflow) {
+        String[] columns = new String[]{BaseColumns._ID, "IFNULL(LENGTH(CAST(" + COLUMN_MESSAGE + " AS BLOB)), 0)"};
+        int deleteCount = 0;
+        long freed = 0;
+        while (freed < overflow) {
+            List<String> ids = new ArrayList<>(EVICTION_CHUNK_SIZE);
+            Cursor cursor = store.query(NAME, columns, null, null, null, null, COLUMN_CREATED, Integer.toString(EVICTION_CHUNK_SIZE));
+            try {
+                while (freed < overflow && cursor.moveToNext()) {
+                    ids.add(cursor.getString(0));
+                    freed += cursor.getLong(1);
+                }
+            } finally {
+                cursor.close();
+            }
+            if (ids.isEmpty()) {
+                break;
+            }
+            deleteCount += store.delete(NAME, BaseColumns._ID + " IN (" + TextUtils.join(SQLConstants.COMMA, repeat("?", ids.size())) + ")",
+                    ids.toArray(new String[ids.size()]));
+        }
+        return deleteCount;
+    }
+
+    /**
+     * Delete the expired messages, oldest expiry first, in small chunks through the expiry index. Every chunk is a
+     * separate statement so readers and writers are never blocked for long, and purging stops once its time budget is
+     * spent; whatever remains is picked up by the next purge.
+     *
+     * @param store data store holding the table
+     * @param now   current time
+     * @return number of rows deleted
+     */
+    public static int purgeExpired(final DataStoreContract store, long now) {
+        String where = BaseColumns._ID + " IN (SELECT " + BaseColumns._ID + " FROM " + NAME + " WHERE " + COLUMN_EXPIRES_AT + " > 0" +
+                SQLConstants.AND + COLUMN_EXPIRES_AT + " <= ? ORDER BY " + COLUMN_EXPIRES_AT + " LIMIT " + PURGE_CHUNK_SIZE + ")";
+        String[] args = new String[]{Long.toString(now)};
+        long deadline = System.nanoTime() + PURGE_TIME_BUDGET * 1000000L;
+        int deleteCount = 0;
+        int deleted;
+        do {
+            deleted = store.purge(NAME, where, args);
+            deleteCount += deleted;
+        } while (deleted == PURGE_CHUNK_SIZE && System.nanoTime() < deadline);
+        if (deleteCount > 0 && FlipcastLog.isLoggable(Log.DEBUG)) {
+            FlipcastLog.d(TAG, "Purged " + deleteCount + " expired rows.");
+        }
+        return deleteCount;
+    }
+
+    /**
+     * Count the unread ({@link InAppMessage#STATUS_NEW}) messages of a device in the cache that have not expired
+     *
+     * @param store       data store holding the table
+     * @param configName  config name
+     * @param deviceId    device id
+     * @param messageType message type or null for all types
+     * @param priority    priority or null for all priorities
+     * @return number of unread messages
+     */
+    public static long countUnread(final DataStoreContract store, String configName, String deviceId, String messageType, String priority) {
+        StringBuilder selection = new StringBuilder(COLUMN_CONFIG_NAME + "=?" + SQLConstants.AND + COLUMN_DEVICE_ID + "=?" + SQLConstants.AND +
+                COLUMN_STATUS + "=?" + SQLConstants.AND + SELECTION_NOT_EXPIRED);
+        List<String> args = new ArrayList<>(6);
+        args.add(configName);
+        args.add(deviceId);
+        args.add(InAppMessage.STATUS_NEW);
+        args.add(Long.toString(System.currentTimeMillis()));
+        if (messageType != null) {
+            selection.append(SQLConstants.AND).append(COLUMN_MESSAGE_TYPE).append("=?");
+            args.add(messageType);
+        }
+        if (priority != null) {
+            selection.append(SQLConstants.AND).append(COLUMN_PRIORITY).append("=?");
+            args.add(priority);
+        }
+        Cursor cursor = store.query(NAME, new String[]{"COUNT(*)"}, selection.toString(), args.toArray(new String[args.size()]), null, null, null);
+        try {
+            return cursor.moveToFirst() ? cursor.getLong(0) : 0;
+        } finally {
+            cursor.close();
+        }
+    }
+
     //*********************************************************************
     // Utility methods
     //*********************************************************************
 
-    private static String getCommaSeparatedTags(InAppMessage inAppMessage) {
+    private static void bindString(final SQLiteStatement statement, int index, String value) {
+        if (value == null) {
+            statement.bindNull(index);
+        } else {
+            statement.bindString(index, value);
+        }
+    }
+
+    private static String[] repeat(String value, int count) {
+        String[] values = new String[count];
+        Arrays.fill(values, value);
+        return values;
+    }
+
+    static String getCommaSeparatedTags(InAppMessage inAppMessage) {
         if (inAppMessage.getTags() == null || inAppMessage.getTags().size() == 0) {
             return "";
         }
-        String commaSeparatedTagString = "";
+        StringBuilder commaSeparatedTags = new StringBuilder();
         for (String tag : inAppMessage.getTags()) {
-            commaSeparatedTagString += tag + ",";
+            commaSeparatedTags.append(tag).append(',');
         }
 
-        return commaSeparatedTagString;
+        return commaSeparatedTags.toString();
     }
 
-    private static List<String> getTagsFromCommaSeparatedTag(String commaString) {
+    /**
+     * Split the stored tags on commas, dropping the whitespace around every tag. Scans the string once without a regex.
+     *
+     * @param commaString tags as stored in {@link #COLUMN_TAGS}
+     * @return tags or null if there are none
+     */
+    static List<String> getTagsFromCommaSeparatedTag(String commaString) {
         if (commaString == null || commaString.length() == 0) {
             return null;
         }
-
-        if (commaString.charAt(commaString.length() - 1) == ',') {
-            commaString = commaString.substring(0, commaString.length() - 1);
+        List<String> tags = new ArrayList<>(4);
+        int length = commaString.length();
+        int start = 0;
+        while (start < length) {
+            int end = commaString.indexOf(',', start);
+            if (end < 0) {
+                end = length;
+            }
+            int tagStart = start;
+            int tagEnd = end;
+            while (tagStart < tagEnd && Character.isWhitespace(commaString.charAt(tagStart))) {
+                tagStart++;
+            }
+            while (tagEnd > tagStart && Character.isWhitespace(commaString.charAt(tagEnd - 1))) {
+                tagEnd--;
+            }
+            if (tagEnd > tagStart) {
+                tags.add(commaString.substring(tagStart, tagEnd));
+            }
+            start = end + 1;
         }
-
-        return Arrays.asList(commaString.split("\\s*,\\s*"));
+        return tags.isEmpty() ? null : tags;
     }
 
     //*********************************************************************
@@ -159,6 +603,9 @@ public class TableInAppMessages {
 
     private interface SQLConstants {
         public static final String CREATE_TABLE = "CREATE TABLE IF NOT EXISTS %s (%s);";
+        public static final String CREATE_INDEX = "CREATE INDEX IF NOT EXISTS %s ON %s (%s);";
+        public static final String ADD_COLUMN = "ALTER TABLE %s ADD COLUMN %s;";
+        public static final String CREATE_TRIGGER = "CREATE TRIGGER IF NOT EXISTS %s %s ON %s BEGIN %s; END;";
         public static final String DATA_TEXT = "%s TEXT DEFAULT '%s' ";
         public static final String DATA_TEXT_UNIQUE_NOT_NULL = "%s TEXT NOT NULL UNIQUE";
         public static final String DATA_INTEGER = "%s INTEGER DEFAULT %d ";
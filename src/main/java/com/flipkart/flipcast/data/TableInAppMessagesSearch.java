@@ -0,0 +1,261 @@
+/*
+ * Copyright 2016 Phaneesh Nagaraja <phaneesh.n@gmail.com>.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package com.flipkart.flipcast.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.provider.BaseColumns;
+
+import com.flipkart.flipcast.log.FlipcastLog;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * FTS3 index over the message and tags of the cached {@linkplain com.flipkart.flipcast.core.InAppMessage} objects.
+ * The docid of every row is the row id ({@link BaseColumns#_ID}) of the message in {@link TableInAppMessages}.
+ * <p></p>
+ * The index is kept in sync by triggers on {@link TableInAppMessages}. A replaced message is deleted (and so removed
+ * from the index) by a trigger before the new one is inserted. Triggers index only plain bodies; the writer of a
+ * compressed body indexes its tags and the first {@value #COMPRESSED_PREFIX_LENGTH} characters of its plain text
+ * through {@link #write(SQLiteStatement, long, String, String)}. FTS3 keeps its own copy of the indexed text, so
+ * indexing whole compressed bodies would store them uncompressed all over again.
+ *
+ * @author phaneesh
+ */
+public class TableInAppMessagesSearch {
+
+    private static final String TAG = "TableInAppMessagesSearch";
+    public static final String NAME = "InAppMessagesSearch";
+
+    public static final String COLUMN_DOCID = "docid";
+
+    public static final String TRIGGER_INSERT = "trg_" + TableInAppMessages.NAME + "_search_insert";
+    public static final String TRIGGER_DELETE = "trg_" + TableInAppMessages.NAME + "_search_delete";
+    public static final String TRIGGER_UPDATE = "trg_" + TableInAppMessages.NAME + "_search_update";
+
+    public static final String INSERT = "INSERT INTO " + NAME + " (" + COLUMN_DOCID + ", " + TableInAppMessages.COLUMN_MESSAGE + ", " +
+            TableInAppMessages.COLUMN_TAGS + ") VALUES (?, ?, ?)";
+
+    private static final String MESSAGES = TableInAppMessages.NAME;
+
+    /**
+     * Only this many of the newest matches are ranked, so that a search costs the same however many messages match.
+     * The window does not depend on the page asked for, so every page is cut from the same ordering.
+     */
+    private static final int RANKED_CANDIDATES = 100;
+
+    /**
+     * Characters of a compressed body which are indexed. Words past the prefix are not found by search.
+     */
+    static final int COMPRESSED_PREFIX_LENGTH = 1024;
+
+    public static void create(final SQLiteDatabase db) {
+        db.execSQL(String.format(Locale.US, "CREATE VIRTUAL TABLE IF NOT EXISTS %s USING fts3(%s, %s);", NAME, TableInAppMessages.COLUMN_MESSAGE,
+                TableInAppMessages.COLUMN_TAGS));
+        db.execSQL(String.format(Locale.US, "CREATE TRIGGER IF NOT EXISTS %s AFTER INSERT ON %s BEGIN %s; END;", TRIGGER_INSERT, MESSAGES,
+                insert("NEW")));
+        db.execSQL(String.format(Locale.US, "CREATE TRIGGER IF NOT EXISTS %s AFTER DELETE ON %s BEGIN %s; END;", TRIGGER_DELETE, MESSAGES,
+                delete("OLD")));
+        db.execSQL(String.format(Locale.US, "CREATE TRIGGER IF NOT EXISTS %s AFTER UPDATE OF %s, %s ON %s BEGIN %s; %s; END;", TRIGGER_UPDATE,
+                TableInAppMessages.COLUMN_MESSAGE, TableInAppMessages.COLUMN_TAGS, MESSAGES, delete("OLD"), insert("NEW")));
+    }
+
+    public static void upgrade(final SQLiteDatabase db, final int oldVersion, final int newVersion) {
+        if (oldVersion >= 8 && oldVersion < 9) {
+            FlipcastLog.i(TAG, "Recreating TableInAppMessagesSearch triggers to skip compressed messages");
+            db.execSQL("DROP TRIGGER IF EXISTS " + TRIGGER_INSERT);
+            db.execSQL("DROP TRIGGER IF EXISTS " + TRIGGER_UPDATE);
+            create(db);
+        }
+        if (oldVersion < 8) {
+            FlipcastLog.i(TAG, "Creating TableInAppMessagesSearch from the cached messages");
+            create(db);
+            db.execSQL("INSERT INTO " + NAME + " (" + COLUMN_DOCID + ", " + TableInAppMessages.COLUMN_MESSAGE + ", " + TableInAppMessages
+                    .COLUMN_TAGS + ") SELECT " + BaseColumns._ID + ", " + TableInAppMessages.COLUMN_MESSAGE + ", " + TableInAppMessages.COLUMN_TAGS +
+                    " FROM " + MESSAGES);
+        }
+    }
+
+    public static void drop(final SQLiteDatabase db) {
+        db.execSQL("DROP TABLE IF EXISTS " + NAME);
+    }
+
+    //*********************************************************************
+    // APIs
+    //*********************************************************************
+
+    /**
+     * Index the tags and the leading plain text of a compressed message through a statement compiled from {@link #INSERT}
+     *
+     * @param statement compiled insert statement
+     * @param rowId     row id of the message
+     * @param message   plain message body
+     * @param tags      tags as stored in {@link TableInAppMessages#COLUMN_TAGS}
+     */
+    public static void write(final SQLiteStatement statement, long rowId, String message, String tags) {
+        statement.clearBindings();
+        statement.bindLong(1, rowId);
+        statement.bindString(2, prefix(message));
+        if (tags == null) {
+            statement.bindNull(3);
+        } else {
+            statement.bindString(3, tags);
+        }
+        statement.executeInsert();
+    }
+
+    /**
+     * Index the tags and the leading plain text of a compressed message
+     *
+     * @param store   data store holding the table
+     * @param rowId   row id of the message
+     * @param message plain message body
+     * @param tags    tags as stored in {@link TableInAppMessages#COLUMN_TAGS}
+     */
+    public static void write(final DataStoreContract store, long rowId, String message, String tags) {
+        ContentValues values = new ContentValues(3);
+        values.put(COLUMN_DOCID, rowId);
+        values.put(TableInAppMessages.COLUMN_MESSAGE, prefix(message));
+        values.put(TableInAppMessages.COLUMN_TAGS, tags);
+        store.insertWithOnConflict(NAME, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+    }
+
+    /**
+     * Leading text of a compressed body to be indexed, cut at a word boundary where possible
+     */
+    static String prefix(String message) {
+        if (message.length() <= COMPRESSED_PREFIX_LENGTH) {
+            return message;
+        }
+        int end = COMPRESSED_PREFIX_LENGTH;
+        while (end > 0 && !Character.isWhitespace(message.charAt(end))) {
+            end--;
+        }
+        return message.substring(0, end == 0 ? COMPRESSED_PREFIX_LENGTH : end);
+    }
+
+    /**
+     * Search the cached messages. Results are ranked by the number of matches in the message and its tags (most first),
+     * then newest first. Expired messages and messages left out by the selection are never returned.
+     * <p></p>
+     * Counting the matches of a message reads and tokenizes its indexed text, so only the {@value #RANKED_CANDIDATES}
+     * newest results, by row id, are ranked. The rest follow them, newest first. The ranked window is picked after the
+     * expiry and the selection are applied and does not depend on the LIMIT clause, so pages neither overlap nor skip
+     * results.
+     *
+     * @param store         data store holding the table
+     * @param text          text to search for. Every word has to match; a word ending with '*' matches as a prefix.
+     * @param projection    columns of {@link TableInAppMessages} to be returned, null for all columns
+     * @param selection     additional selection on {@link TableInAppMessages}
+     * @param selectionArgs selection arguments
+     * @param limit         LIMIT clause or null for all results
+     * @return Cursor
+     */
+    public static Cursor search(final DataStoreContract store, String text, String[] projection, String selection, String[] selectionArgs,
+                                String limit) {
+        String match = toMatchQuery(text);
+        if (match.length() == 0) {
+            //Nothing to search for; an empty result with the requested columns
+            return store.query(MESSAGES, projection, "0", null, null, null, null);
+        }
+        StringBuilder columns = new StringBuilder();
+        if (projection == null) {
+            columns.append(MESSAGES).append(".*");
+        } else {
+            String[] queried = TableInAppMessages.withCodec(projection);
+            for (int i = 0; i < queried.length; i++) {
+                if (i > 0) {
+                    columns.append(", ");
+                }
+                columns.append(MESSAGES).append('.').append(queried[i]);
+            }
+        }
+        String filter = TableInAppMessages.SELECTION_NOT_EXPIRED;
+        List<String> filterArgs = new ArrayList<>();
+        filterArgs.add(Long.toString(System.currentTimeMillis()));
+        if (selection != null && selection.length() > 0) {
+            filter += " AND (" + selection + ")";
+            if (selectionArgs != null) {
+                for (String arg : selectionArgs) {
+                    filterArgs.add(arg);
+                }
+            }
+        }
+        //The newest results; offsets() is evaluated only for these, the other matches get rank 0
+        String window = "SELECT " + BaseColumns._ID + " FROM " + MESSAGES + " WHERE " + filter + " AND " + BaseColumns._ID + " IN (SELECT " +
+                COLUMN_DOCID + " FROM " + NAME + " WHERE " + NAME + " MATCH ?) ORDER BY " + BaseColumns._ID + " DESC LIMIT " + RANKED_CANDIDATES;
+        StringBuilder sql = new StringBuilder("SELECT ").append(columns).append(" FROM ").append(MESSAGES).append(" JOIN (SELECT ")
+                .append(COLUMN_DOCID).append(", CASE WHEN ").append(COLUMN_DOCID).append(" IN (").append(window).append(") THEN length(offsets(")
+                .append(NAME).append(")) ELSE 0 END AS rank FROM ").append(NAME).append(" WHERE ").append(NAME).append(" MATCH ?) AS matches ON ")
+                .append(MESSAGES).append('.').append(BaseColumns._ID).append(" = matches.").append(COLUMN_DOCID).append(" WHERE ").append(filter)
+                .append(" ORDER BY matches.rank DESC, ").append(MESSAGES).append('.').append(TableInAppMessages.COLUMN_CREATED).append(" DESC, ")
+                .append(MESSAGES).append('.').append(BaseColumns._ID).append(" DESC");
+        if (limit != null) {
+            sql.append(" LIMIT ").append(limit);
+        }
+        List<String> args = new ArrayList<>(filterArgs);
+        args.add(match);
+        args.add(match);
+        args.addAll(filterArgs);
+        return InAppMessageCursor.wrap(store.rawQuery(sql.toString(), args.toArray(new String[args.size()])));
+    }
+
+    /**
+     * Turn user input into an FTS query: every word is quoted, so that operators and punctuation in the input cannot
+     * break the query, and a trailing '*' is kept as prefix match.
+     *
+     * @return query or an empty string if there is nothing to search for
+     */
+    static String toMatchQuery(String text) {
+        StringBuilder query = new StringBuilder();
+        for (String word : text.trim().split("\\s+")) {
+            boolean prefix = word.endsWith("*");
+            String term = word.replace("\"", "").replace("*", "");
+            if (term.length() == 0) {
+                continue;
+            }
+            if (query.length() > 0) {
+                query.append(' ');
+            }
+            query.append('"').append(term);
+            if (prefix) {
+                query.append('*');
+            }
+            query.append('"');
+        }
+        return query.toString();
+    }
+
+    private static String insert(String row) {
+        return "INSERT INTO " + NAME + " (" + COLUMN_DOCID + ", " + TableInAppMessages.COLUMN_MESSAGE + ", " + TableInAppMessages.COLUMN_TAGS +
+                ") SELECT " + row + "." + BaseColumns._ID + ", " + row + "." + TableInAppMessages.COLUMN_MESSAGE + ", " + row + "." +
+                TableInAppMessages.COLUMN_TAGS + " WHERE " + row + "." + TableInAppMessages.COLUMN_CODEC + " = " + InAppMessageCodec.CODEC_PLAIN;
+    }
+
+    private static String delete(String row) {
+        return "DELETE FROM " + NAME + " WHERE " + COLUMN_DOCID + " = " + row + "." + BaseColumns._ID;
+    }
+
+    //*********************************************************************
+    // End of class
+    //*********************************************************************
+
+}
@@ -0,0 +1,210 @@
+/*
+ * Copyright 2016 Phaneesh Nagaraja <phaneesh.n@gmail.com>.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package com.flipkart.flipcast.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.provider.BaseColumns;
+
+import com.flipkart.flipcast.log.FlipcastLog;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Table to persist register, unregister and ack operations which could not be delivered to the flipcast service,
+ * so that they can be delivered once connectivity returns.
+ * <p></p>
+ * Redundant entries are collapsed on insert: for a device only the latest register/unregister is kept and an ack is
+ * kept only once per message.
+ *
+ * @author phaneesh
+ */
+public class TableOutbox {
+
+    private static final String TAG = "TableOutbox";
+    public static final String NAME = "Outbox";
+
+    public static final String COLUMN_CHANNEL = "channel";
+    public static final String COLUMN_OPERATION = "operation";
+    public static final String COLUMN_CONFIG_NAME = "configName";
+    public static final String COLUMN_TARGET_ID = "targetId";
+    public static final String COLUMN_PAYLOAD = "payload";
+    public static final String COLUMN_CREATED = "created";
+
+    public static final String OPERATION_REGISTER = "REGISTER";
+    public static final String OPERATION_UNREGISTER = "UNREGISTER";
+    public static final String OPERATION_ACK = "ACK";
+
+    /**
+     * Operations on the same channel & target collapse into one entry
+     */
+    private static final String CHANNEL_DEVICE = "device";
+    private static final String CHANNEL_ACK = "ack";
+
+    public static void create(final SQLiteDatabase db) {
+        db.execSQL(String.format(Locale.US, "CREATE TABLE IF NOT EXISTS %s (%s INTEGER PRIMARY KEY AUTOINCREMENT, %s TEXT NOT NULL, %s TEXT NOT NULL, "
+                + "%s TEXT NOT NULL, %s TEXT NOT NULL, %s TEXT, %s INTEGER DEFAULT 0, UNIQUE (%s, %s, %s));", NAME, BaseColumns._ID, COLUMN_CHANNEL,
+                COLUMN_OPERATION, COLUMN_CONFIG_NAME, COLUMN_TARGET_ID, COLUMN_PAYLOAD, COLUMN_CREATED, COLUMN_CHANNEL, COLUMN_CONFIG_NAME,
+                COLUMN_TARGET_ID));
+    }
+
+    public static void upgrade(final SQLiteDatabase db, final int oldVersion, final int newVersion) {
+        if (oldVersion < 4) {
+            FlipcastLog.i(TAG, "Creating TableOutbox");
+            create(db);
+        }
+    }
+
+    //*********************************************************************
+    // APIs
+    //*********************************************************************
+
+    /**
+     * Queue a device registration. Replaces any pending registration or unregistration of the device.
+     *
+     * @param store      data store holding the table
+     * @param configName config name
+     * @param deviceId   device id
+     * @param payload    serialized registration request
+     */
+    public static void enqueueRegister(final DataStoreContract store, String configName, String deviceId, String payload) {
+        enqueue(store, CHANNEL_DEVICE, OPERATION_REGISTER, configName, deviceId, payload, SQLiteDatabase.CONFLICT_REPLACE);
+    }
+
+    /**
+     * Queue a device unregistration. Replaces any pending registration or unregistration of the device.
+     *
+     * @param store      data store holding the table
+     * @param configName config name
+     * @param deviceId   device id
+     */
+    public static void enqueueUnregister(final DataStoreContract store, String configName, String deviceId) {
+        enqueue(store, CHANNEL_DEVICE, OPERATION_UNREGISTER, configName, deviceId, null, SQLiteDatabase.CONFLICT_REPLACE);
+    }
+
+    /**
+     * Queue a message acknowledgement. Ignored if the message is already queued for acknowledgement.
+     *
+     * @param store      data store holding the table
+     * @param configName config name
+     * @param messageId  message id
+     */
+    public static void enqueueAck(final DataStoreContract store, String configName, String messageId) {
+        enqueue(store, CHANNEL_ACK, OPERATION_ACK, configName, messageId, null, SQLiteDatabase.CONFLICT_IGNORE);
+    }
+
+    /**
+     * Read the oldest pending entries
+     *
+     * @param store data store holding the table
+     * @param limit maximum number of entries to read
+     * @return pending entries, oldest first
+     */
+    public static List<Entry> read(final DataStoreContract store, int limit) {
+        List<Entry> entries = new ArrayList<>();
+        Cursor cursor = store.query(NAME, null, null, null, null, null, BaseColumns._ID + " ASC", Integer.toString(limit));
+        try {
+            while (cursor.moveToNext()) {
+                entries.add(new Entry(cursor.getLong(cursor.getColumnIndex(BaseColumns._ID)), cursor.getString(cursor.getColumnIndex
+                        (COLUMN_OPERATION)), cursor.getString(cursor.getColumnIndex(COLUMN_CONFIG_NAME)), cursor.getString(cursor.getColumnIndex
+                        (COLUMN_TARGET_ID)), cursor.getString(cursor.getColumnIndex(COLUMN_PAYLOAD))));
+            }
+        } finally {
+            cursor.close();
+        }
+        return entries;
+    }
+
+    /**
+     * Remove a delivered entry
+     *
+     * @param store data store holding the table
+     * @param entry delivered entry
+     */
+    public static void remove(final DataStoreContract store, Entry entry) {
+        store.delete(NAME, BaseColumns._ID + "=?", new String[]{Long.toString(entry.getRowId())});
+    }
+
+    //*********************************************************************
+    // Utility methods
+    //*********************************************************************
+
+    private static void enqueue(final DataStoreContract store, String channel, String operation, String configName, String targetId, String
+            payload, int conflictAlgorithm) {
+        ContentValues values = new ContentValues();
+        values.put(COLUMN_CHANNEL, channel);
+        values.put(COLUMN_OPERATION, operation);
+        values.put(COLUMN_CONFIG_NAME, configName);
+        values.put(COLUMN_TARGET_ID, targetId);
+        values.put(COLUMN_PAYLOAD, payload);
+        values.put(COLUMN_CREATED, System.currentTimeMillis());
+        store.insertWithOnConflict(NAME, null, values, conflictAlgorithm);
+    }
+
+    //*********************************************************************
+    // Public classes
+    //*********************************************************************
+
+    /**
+     * A pending operation
+     */
+    public static class Entry {
+
+        private final long rowId;
+        private final String operation;
+        private final String configName;
+        private final String targetId;
+        private final String payload;
+
+        Entry(long rowId, String operation, String configName, String targetId, String payload) {
+            this.rowId = rowId;
+            this.operation = operation;
+            this.configName = configName;
+            this.targetId = targetId;
+            this.payload = payload;
+        }
+
+        public long getRowId() {
+            return rowId;
+        }
+
+        public String getOperation() {
+            return operation;
+        }
+
+        public String getConfigName() {
+            return configName;
+        }
+
+        public String getTargetId() {
+            return targetId;
+        }
+
+        public String getPayload() {
+            return payload;
+        }
+    }
+
+    //*********************************************************************
+    // End of class
+    //*********************************************************************
+
+}
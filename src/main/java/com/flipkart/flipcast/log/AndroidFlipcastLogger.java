@@ -0,0 +1,47 @@
+/*
+ * Copyright 2016 Phaneesh Nagaraja <phaneesh.n@gmail.com>.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package com.flipkart.flipcast.log;
+
+import android.util.Log;
+
+/**
+ * {@link FlipcastLogger} writing to logcat for all the levels at or above the given level.
+ *
+ * @author phaneesh
+ */
+public class AndroidFlipcastLogger implements FlipcastLogger {
+
+    private final int level;
+
+    public AndroidFlipcastLogger(int level) {
+        this.level = level;
+    }
+
+    @Override
+    public boolean isLoggable(int level) {
+        return level >= this.level;
+    }
+
+    @Override
+    public void log(int level, String tag, String message, Throwable t) {
+        if (t != null) {
+            message = message + '\n' + Log.getStackTraceString(t);
+        }
+        Log.println(level, tag, message);
+    }
+}
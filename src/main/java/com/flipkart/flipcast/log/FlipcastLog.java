@@ -0,0 +1,93 @@
+/*
+ * Copyright 2016 Phaneesh Nagaraja <phaneesh.n@gmail.com>.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package com.flipkart.flipcast.log;
+
+import android.util.Log;
+
+/**
+ * Entry point for all the logging done by the library. Logs only warnings and errors to logcat unless a different
+ * {@link FlipcastLogger} is set.
+ * <p></p>
+ * Messages which need formatting must be guarded with {@link #isLoggable(int)} so that nothing is built when the
+ * level is disabled:
+ * <pre>
+ * if (FlipcastLog.isLoggable(Log.DEBUG)) {
+ *     FlipcastLog.d(TAG, "Fetched: " + response.body());
+ * }
+ * </pre>
+ *
+ * @author phaneesh
+ */
+public final class FlipcastLog {
+
+    private static final FlipcastLogger NONE = new FlipcastLogger() {
+        @Override
+        public boolean isLoggable(int level) {
+            return false;
+        }
+
+        @Override
+        public void log(int level, String tag, String message, Throwable t) {
+        }
+    };
+
+    private static volatile FlipcastLogger sLogger = new AndroidFlipcastLogger(Log.WARN);
+
+    private FlipcastLog() {
+    }
+
+    /**
+     * Set the logger used by the library. Passing null disables logging.
+     *
+     * @param logger
+     */
+    public static void setLogger(FlipcastLogger logger) {
+        sLogger = logger == null ? NONE : logger;
+    }
+
+    public static boolean isLoggable(int level) {
+        return sLogger.isLoggable(level);
+    }
+
+    public static void v(String tag, String message) {
+        log(Log.VERBOSE, tag, message, null);
+    }
+
+    public static void d(String tag, String message) {
+        log(Log.DEBUG, tag, message, null);
+    }
+
+    public static void i(String tag, String message) {
+        log(Log.INFO, tag, message, null);
+    }
+
+    public static void w(String tag, String message) {
+        log(Log.WARN, tag, message, null);
+    }
+
+    public static void e(String tag, String message, Throwable t) {
+        log(Log.ERROR, tag, message, t);
+    }
+
+    private static void log(int level, String tag, String message, Throwable t) {
+        FlipcastLogger logger = sLogger;
+        if (logger.isLoggable(level)) {
+            logger.log(level, tag, message, t);
+        }
+    }
+}
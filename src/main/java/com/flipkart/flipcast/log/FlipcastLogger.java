@@ -0,0 +1,33 @@
+/*
+ * Copyright 2016 Phaneesh Nagaraja <phaneesh.n@gmail.com>.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package com.flipkart.flipcast.log;
+
+/**
+ * Sink for the diagnostics of the library. Levels are the ones defined in {@link android.util.Log}.
+ * Implementations should answer {@link #isLoggable(int)} cheaply since it is consulted on hot paths before any
+ * message is built.
+ *
+ * @author phaneesh
+ */
+public interface FlipcastLogger {
+
+    boolean isLoggable(int level);
+
+    void log(int level, String tag, String message, Throwable t);
+
+}